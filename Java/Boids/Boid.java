@@ -0,0 +1,52 @@
+package Java.Boids;
+
+import java.util.Random;
+
+/**
+ * Boid class for individual flocking agents. A boid is a view over one
+ * slot of a FlockState; until it is added to a flock it owns a private
+ * single-slot state holding its starting position and velocity.
+ */
+class Boid {
+    // Perception radii for the three steering behaviors
+    static final double ALIGN_RADIUS = 50;
+    static final double COHESION_RADIUS = 100;
+    static final double SEPARATION_RADIUS = 50;
+    static final double MAX_PERCEPTION_RADIUS = 100;
+    
+    private FlockState state;
+    private int index;
+    
+    public Boid(double x, double y, Random random) {
+        // Initialize with random velocity
+        this(new FlockState(1), 0);
+        state.addRandom(x, y, random);
+    }
+    
+    Boid(FlockState state, int index) {
+        this.state = state;
+        this.index = index;
+    }
+    
+    // Point this boid at its slot in a flock's state
+    void attach(FlockState state, int index) {
+        this.state = state;
+        this.index = index;
+    }
+    
+    public double getX() {
+        return state.px[index];
+    }
+    
+    public double getY() {
+        return state.py[index];
+    }
+    
+    public double getVelocityX() {
+        return state.vx[index];
+    }
+    
+    public double getVelocityY() {
+        return state.vy[index];
+    }
+}
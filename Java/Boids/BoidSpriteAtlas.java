@@ -0,0 +1,104 @@
+package Java.Boids;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Boid triangle pre-rendered at a fixed set of headings into one strip
+ * image. Drawing a boid is then a single image blit (or a copy into an
+ * int[] raster) instead of building a transform and filling and stroking
+ * a path twice. Headings are rounded to the nearest sprite and positions
+ * to the nearest pixel, so this trades a little precision for speed.
+ */
+class BoidSpriteAtlas {
+    static final int HEADINGS = 64;
+
+    // Sprite cell size; fits the rotated triangle plus its outline
+    private static final int CELL = 16;
+    private static final int CENTER = CELL / 2;
+
+    private final BufferedImage atlas;
+    private final int[] pixels;
+
+    public BoidSpriteAtlas(Path2D shape) {
+        atlas = new BufferedImage(CELL * HEADINGS, CELL, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g2d = atlas.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setStroke(new BasicStroke(1f));
+        for (int k = 0; k < HEADINGS; k++) {
+            AffineTransform transform = new AffineTransform();
+            transform.translate(k * CELL + CENTER, CENTER);
+            transform.rotate(k * 2 * Math.PI / HEADINGS);
+
+            g2d.setColor(Color.WHITE);
+            g2d.fill(transform.createTransformedShape(shape));
+            g2d.setColor(Color.BLACK);
+            g2d.draw(transform.createTransformedShape(shape));
+        }
+        g2d.dispose();
+
+        pixels = ((DataBufferInt) atlas.getRaster().getDataBuffer()).getData();
+    }
+
+    // Sprite index for a boid moving with the given velocity
+    static int headingIndex(double vx, double vy) {
+        double theta = Math.atan2(vy, vx) + Math.PI / 2;
+        int k = (int) Math.round(theta * HEADINGS / (2 * Math.PI));
+        return ((k % HEADINGS) + HEADINGS) % HEADINGS;
+    }
+
+    // Draw every boid with one drawImage call each
+    public void draw(Graphics2D g2d, FlockSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            int sx = headingIndex(snapshot.getVelocityX(i), snapshot.getVelocityY(i)) * CELL;
+            int dx = (int) Math.round(snapshot.getX(i)) - CENTER;
+            int dy = (int) Math.round(snapshot.getY(i)) - CENTER;
+            g2d.drawImage(atlas, dx, dy, dx + CELL, dy + CELL, sx, 0, sx + CELL, CELL, null);
+        }
+    }
+
+    /**
+     * Blend every boid straight into an opaque RGB raster of the given
+     * size, clipping sprites at the edges.
+     */
+    public void draw(int[] raster, int width, int height, FlockSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            int sx = headingIndex(snapshot.getVelocityX(i), snapshot.getVelocityY(i)) * CELL;
+            int dx = (int) Math.round(snapshot.getX(i)) - CENTER;
+            int dy = (int) Math.round(snapshot.getY(i)) - CENTER;
+
+            int minRow = Math.max(0, -dy);
+            int maxRow = Math.min(CELL, height - dy);
+            int minCol = Math.max(0, -dx);
+            int maxCol = Math.min(CELL, width - dx);
+
+            for (int row = minRow; row < maxRow; row++) {
+                int src = row * CELL * HEADINGS + sx;
+                int dst = (dy + row) * width + dx;
+                for (int col = minCol; col < maxCol; col++) {
+                    int argb = pixels[src + col];
+                    int alpha = argb >>> 24;
+                    if (alpha == 0) {
+                        continue;
+                    }
+                    raster[dst + col] = alpha == 255 ? argb : blend(argb, raster[dst + col], alpha);
+                }
+            }
+        }
+    }
+
+    private static int blend(int src, int dst, int alpha) {
+        int inverse = 255 - alpha;
+        int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inverse) / 255;
+        int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inverse) / 255;
+        int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inverse) / 255;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,110 @@
+package Java.Boids;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Flock class to manage all boids
+ */
+class Flock {
+    // Boid objects are views over the shared state arrays
+    private ArrayList<Boid> boids;
+    private FlockState state;
+    
+    // How neighbors within the perception radii are found
+    private volatile NeighborSearch neighborSearch = NeighborSearch.GRID;
+    
+    // Neighbors per boid in the topological mode; 0 keeps the metric radii
+    private volatile int nearestCount = 0;
+    
+    // Optional separate distance kernel, such as the SIMD one
+    private volatile NeighborKernel neighborKernel;
+    
+    // Reduced-quality settings chosen by the frame budget controller
+    private volatile int neighborStride = 1;
+    private volatile boolean staggeredForces = false;
+    
+    // Worker threads for the parallel step
+    private ForkJoinPool pool;
+    
+    public Flock() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    public Flock(int parallelism) {
+        boids = new ArrayList<>();
+        state = new FlockState(128);
+        pool = new ForkJoinPool(parallelism);
+    }
+    
+    public void addBoid(Boid boid) {
+        int index = state.add(boid.getX(), boid.getY(), boid.getVelocityX(), boid.getVelocityY());
+        boid.attach(state, index);
+        boids.add(boid);
+    }
+    
+    // Add a boid with a random velocity directly into the shared state
+    public Boid addBoid(double x, double y, Random random) {
+        Boid boid = new Boid(state, state.addRandom(x, y, random));
+        boids.add(boid);
+        return boid;
+    }
+    
+    public int size() {
+        return boids.size();
+    }
+    
+    public Boid getBoid(int index) {
+        return boids.get(index);
+    }
+    
+    public FlockState getState() {
+        return state;
+    }
+    
+    // Switch between the spatial grid, Verlet lists and checking every pair
+    public void setNeighborSearch(NeighborSearch neighborSearch) {
+        this.neighborSearch = neighborSearch;
+    }
+    
+    public NeighborSearch getNeighborSearch() {
+        return neighborSearch;
+    }
+    
+    /**
+     * React to the k nearest boids instead of every boid within the
+     * perception radii, as in starling models. 0 restores the radii.
+     */
+    public void setTopologicalNeighbors(int k) {
+        this.nearestCount = Math.max(0, k);
+    }
+    
+    public int getTopologicalNeighbors() {
+        return nearestCount;
+    }
+    
+    // Pick neighbor candidates with a separate kernel; null tests distances inline
+    public void setNeighborKernel(NeighborKernel neighborKernel) {
+        this.neighborKernel = neighborKernel;
+    }
+    
+    // Consider only every stride-th neighbor candidate; 1 uses all of them
+    public void setNeighborStride(int stride) {
+        this.neighborStride = stride;
+    }
+    
+    // Recompute each boid's forces only every other step
+    public void setStaggeredForces(boolean staggered) {
+        this.staggeredForces = staggered;
+    }
+    
+    // Advance every boid by one step
+    public void step(double alignWeight, double cohesionWeight, double separationWeight) {
+        state.setNeighborKernel(neighborKernel);
+        state.setNeighborStride(neighborStride);
+        state.setStaggeredForces(staggeredForces);
+        state.step(alignWeight, cohesionWeight, separationWeight,
+                   neighborSearch, nearestCount, pool);
+    }
+}
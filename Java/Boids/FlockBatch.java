@@ -0,0 +1,78 @@
+package Java.Boids;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Headless entry point for generating flocking datasets. Builds a seeded
+ * flock, runs it as fast as possible without opening a window, and
+ * streams every frame to a binary trajectory file (see TrajectoryWriter).
+ *
+ * Usage: java Java.Boids.FlockBatch --boids N --steps T --seed S
+ *            --align A --cohesion C --separation P --threads K --out FILE
+ */
+public class FlockBatch {
+    private static final String USAGE = "Usage: java Java.Boids.FlockBatch --boids N --steps T --seed S"
+            + " --align A --cohesion C --separation P --threads K --out FILE";
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int count = 1000;
+        int steps = 1000;
+        long seed = 42L;
+        double alignWeight = 1.0;
+        double cohesionWeight = 1.0;
+        double separationWeight = 1.5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = Paths.get("flock.bin");
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i] + "\n" + USAGE);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--boids": count = Integer.parseInt(value); break;
+                case "--steps": steps = Integer.parseInt(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--align": alignWeight = Double.parseDouble(value); break;
+                case "--cohesion": cohesionWeight = Double.parseDouble(value); break;
+                case "--separation": separationWeight = Double.parseDouble(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--out": out = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + USAGE);
+            }
+        }
+
+        // Place boids the same way the panel does, from a seeded generator
+        Random random = new Random(seed);
+        Flock flock = new Flock(threads);
+        for (int i = 0; i < count; i++) {
+            flock.addBoid(random.nextDouble() * 800, random.nextDouble() * 600, random);
+        }
+
+        long start = System.nanoTime();
+        long stepNanos = 0;
+        try (TrajectoryWriter writer = new TrajectoryWriter(out, count, steps + 1, seed,
+                alignWeight, cohesionWeight, separationWeight)) {
+            writer.writeFrame(flock.getState());
+            for (int s = 1; s <= steps; s++) {
+                long stepStart = System.nanoTime();
+                flock.step(alignWeight, cohesionWeight, separationWeight);
+                stepNanos += System.nanoTime() - stepStart;
+                writer.writeFrame(flock.getState());
+
+                if (s % Math.max(1, steps / 10) == 0) {
+                    System.out.printf("step %d/%d%n", s, steps);
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d boids, %d steps in %.2f s (%.2f s stepping, %.2f s writing) -> %s%n",
+                count, steps, seconds, stepNanos / 1e9, seconds - stepNanos / 1e9, out);
+    }
+}
@@ -0,0 +1,235 @@
+package Java.Boids;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command-line benchmark for the flock step. It compares the spatial grid
+ * against the brute-force neighbor search (positions should agree up to
+ * floating-point rounding), does the same for the Verlet lists, checks
+ * that the parallel step gives identical results on one thread and on all
+ * cores, checks the k-d tree against a brute-force k-nearest search,
+ * checks the SIMD distance kernel against the scalar one, and times the
+ * step.
+ *
+ * It exits with status 1 if the distance kernel's neighbors or steps
+ * differ at all from the scalar loop's.
+ *
+ * Usage: java Java.Boids.FlockBenchmark [boids] [steps] [seed]
+ *
+ * To include the SIMD kernel, compile Java.Boids.simd and run with
+ * --add-modules jdk.incubator.vector (see VectorNeighborKernel).
+ */
+public class FlockBenchmark {
+    // Kernel checks that did not hold; main exits with status 1 if any did not
+    private static int failures;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Flock bruteForce = createFlock(count, seed, cores);
+        bruteForce.setNeighborSearch(NeighborSearch.BRUTE_FORCE);
+        Flock grid = createFlock(count, seed, cores);
+        grid.setNeighborSearch(NeighborSearch.GRID);
+        Flock verlet = createFlock(count, seed, cores);
+        verlet.setNeighborSearch(NeighborSearch.VERLET);
+
+        // Compare a few steps before chaotic divergence takes over
+        int compareSteps = Math.min(steps, 5);
+        for (int s = 0; s < compareSteps; s++) {
+            bruteForce.step(1.0, 1.0, 1.5);
+            grid.step(1.0, 1.0, 1.5);
+            verlet.step(1.0, 1.0, 1.5);
+            System.out.printf("step %d: max position difference grid %.3e, Verlet lists %.3e%n",
+                    s + 1, maxDifference(bruteForce, grid), maxDifference(bruteForce, verlet));
+        }
+
+        // The parallel step must not depend on the number of threads,
+        // with either the perception radii or the 7 nearest neighbors
+        int checkThreads = Math.max(4, cores);
+        for (int k : new int[] {0, 7}) {
+            Flock single = createFlock(count, seed, 1);
+            Flock parallel = createFlock(count, seed, checkThreads);
+            single.setTopologicalNeighbors(k);
+            parallel.setTopologicalNeighbors(k);
+            for (int s = 0; s < steps; s++) {
+                single.step(1.0, 1.0, 1.5);
+                parallel.step(1.0, 1.0, 1.5);
+            }
+            System.out.printf("k=%d, 1 vs %d threads after %d steps: max position difference %.3e%n",
+                    k, checkThreads, steps, maxDifference(single, parallel));
+        }
+
+        // Both distance kernels must report the same candidates, and using
+        // a kernel must not change the step at all
+        NeighborKernel kernel = NeighborKernel.vector();
+        int mismatches = checkKernel(kernel, seed);
+        if (mismatches != 0) {
+            failures++;
+        }
+        System.out.printf("%s kernel vs scalar: %d mismatched hit lists%n", kernel.getName(), mismatches);
+        for (NeighborSearch search : new NeighborSearch[] {NeighborSearch.BRUTE_FORCE, NeighborSearch.GRID}) {
+            Flock inline = createFlock(count, seed, cores);
+            Flock filtered = createFlock(count, seed, cores);
+            inline.setNeighborSearch(search);
+            filtered.setNeighborSearch(search);
+            filtered.setNeighborKernel(kernel);
+            for (int s = 0; s < steps; s++) {
+                inline.step(1.0, 1.0, 1.5);
+                filtered.step(1.0, 1.0, 1.5);
+            }
+            double difference = maxDifference(inline, filtered);
+            if (difference != 0) {
+                failures++;
+            }
+            System.out.printf("%s, inline vs %s kernel after %d steps: max position difference %.3e%n",
+                    search, kernel.getName(), steps, difference);
+        }
+
+        // k-d tree neighbors must match a brute-force k-nearest search
+        System.out.printf("k-d tree vs brute-force 7 nearest: max distance difference %.3e%n",
+                checkNearest(createFlock(count, seed, cores), 7));
+
+        System.out.printf("brute force: %.2f ms/step%n", timeSteps(createFlock(count, seed, cores), NeighborSearch.BRUTE_FORCE, steps));
+        System.out.printf("grid: %.2f ms/step%n", timeSteps(createFlock(count, seed, cores), NeighborSearch.GRID, steps));
+        NeighborKernel[] kernels = kernel == NeighborKernel.scalar()
+                ? new NeighborKernel[] {kernel}
+                : new NeighborKernel[] {NeighborKernel.scalar(), kernel};
+        for (NeighborKernel k : kernels) {
+            Flock flock = createFlock(count, seed, cores);
+            flock.setNeighborKernel(k);
+            System.out.printf("brute force, %s kernel: %.2f ms/step%n",
+                    k.getName(), timeSteps(flock, NeighborSearch.BRUTE_FORCE, steps));
+            flock = createFlock(count, seed, cores);
+            flock.setNeighborKernel(k);
+            System.out.printf("grid, %s kernel: %.2f ms/step%n",
+                    k.getName(), timeSteps(flock, NeighborSearch.GRID, steps));
+        }
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            System.out.printf("grid, %2d threads: %.2f ms/step%n",
+                    threads, timeSteps(createFlock(count, seed, threads), NeighborSearch.GRID, steps));
+        }
+        // The lists only pay off if the whole step beats the grid's
+        double gridMillis = timeSteps(createFlock(count, seed, cores), NeighborSearch.GRID, steps);
+        Flock cached = createFlock(count, seed, cores);
+        double verletMillis = timeSteps(cached, NeighborSearch.VERLET, steps);
+        System.out.printf("Verlet lists: %.2f ms/step, %+.2f ms/step against the grid's %.2f%n",
+                verletMillis, verletMillis - gridMillis, gridMillis);
+        VerletLists lists = cached.getState().getVerletLists();
+        System.out.printf("  rebuilt on %d of %d steps (%.1f%%), %.2f ms per build%n",
+                lists.getRebuilds(), lists.getSteps(), lists.getRebuildRate() * 100,
+                lists.getAverageBuildMillis());
+        Flock topological = createFlock(count, seed, cores);
+        topological.setTopologicalNeighbors(7);
+        System.out.printf("topological, 7 nearest: %.2f ms/step%n", timeSteps(topological, NeighborSearch.GRID, steps));
+
+        if (failures > 0) {
+            System.err.println(failures + " kernel checks failed");
+            System.exit(1);
+        }
+    }
+
+    static Flock createFlock(int count, long seed, int parallelism) {
+        Random random = new Random(seed);
+        Flock flock = new Flock(parallelism);
+        for (int i = 0; i < count; i++) {
+            flock.addBoid(random.nextDouble() * 800, random.nextDouble() * 600, random);
+        }
+        return flock;
+    }
+
+    static double maxDifference(Flock a, Flock b) {
+        double max = 0;
+        for (int i = 0; i < a.size(); i++) {
+            max = Math.max(max, Math.abs(a.getBoid(i).getX() - b.getBoid(i).getX()));
+            max = Math.max(max, Math.abs(a.getBoid(i).getY() - b.getBoid(i).getY()));
+        }
+        return max;
+    }
+
+    // Number of random queries where the kernel's hits or distances differ from the scalar loop
+    private static int checkKernel(NeighborKernel kernel, long seed) {
+        Random random = new Random(seed);
+        int n = 1000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int k = 0; k < n; k++) {
+            xs[k] = random.nextDouble() * 800;
+            ys[k] = random.nextDouble() * 600;
+        }
+        int[] expected = new int[n];
+        int[] actual = new int[n];
+        double[] expectedDistSq = new double[n];
+        double[] actualDistSq = new double[n];
+
+        int mismatches = 0;
+        for (int q = 0; q < 500; q++) {
+            // Odd start and length exercise the unaligned ends
+            int from = random.nextInt(n);
+            int to = from + random.nextInt(n - from + 1);
+            double x = random.nextDouble() * 800;
+            double y = random.nextDouble() * 600;
+            double radiusSq = 10000;
+            int e = NeighborKernel.scalar().withinRadius(xs, ys, from, to, x, y, radiusSq, expected, expectedDistSq);
+            int a = kernel.withinRadius(xs, ys, from, to, x, y, radiusSq, actual, actualDistSq);
+            boolean same = e == a && Arrays.equals(expected, 0, e, actual, 0, a);
+            for (int h = 0; same && h < e; h++) {
+                same = expectedDistSq[expected[h] - from] == actualDistSq[actual[h] - from];
+            }
+            if (!same) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    // Largest difference between the sorted k-nearest distances of both searches
+    private static double checkNearest(Flock flock, int k) {
+        FlockState state = flock.getState();
+        int n = state.size();
+        KdTree tree = new KdTree();
+        tree.rebuild(state.px, state.py, n, ForkJoinPool.commonPool());
+        KdTree.NearestSearch search = new KdTree.NearestSearch();
+
+        double max = 0;
+        double[] all = new double[n];
+        for (int i = 0; i < n; i += Math.max(1, n / 200)) {
+            tree.nearest(state.px[i], state.py[i], i, k, search);
+            double[] found = Arrays.copyOf(search.distSq, search.count);
+            Arrays.sort(found);
+
+            int m = 0;
+            for (int j = 0; j < n; j++) {
+                if (j != i) {
+                    double dx = state.px[i] - state.px[j];
+                    double dy = state.py[i] - state.py[j];
+                    all[m++] = dx * dx + dy * dy;
+                }
+            }
+            Arrays.sort(all, 0, m);
+            for (int q = 0; q < Math.min(k, m); q++) {
+                max = Math.max(max, Math.abs(Math.sqrt(found[q]) - Math.sqrt(all[q])));
+            }
+        }
+        return max;
+    }
+
+    private static double timeSteps(Flock flock, NeighborSearch search, int steps) {
+        flock.setNeighborSearch(search);
+
+        // Warm up the JIT before measuring
+        for (int s = 0; s < Math.min(steps, 10); s++) {
+            flock.step(1.0, 1.0, 1.5);
+        }
+
+        long start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            flock.step(1.0, 1.0, 1.5);
+        }
+        return (System.nanoTime() - start) / 1e6 / steps;
+    }
+}
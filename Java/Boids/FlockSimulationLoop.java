@@ -0,0 +1,150 @@
+package Java.Boids;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the flock on its own thread with a fixed timestep, independent of
+ * how often Swing repaints. Steps are scheduled from a time accumulator,
+ * so a higher step rate runs several steps per rendered frame and a slow
+ * frame is caught up with extra steps instead of being merged into one.
+ * After each batch of steps an immutable FlockSnapshot is published for
+ * the panel to draw.
+ */
+class FlockSimulationLoop implements Runnable {
+    // Steps to run at most per batch, so a long stall does not snowball
+    private static final int MAX_CATCH_UP_STEPS = 16;
+
+    private final Flock flock;
+    private final ConcurrentLinkedQueue<Boid> pendingBoids = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    // Settings written by the UI thread
+    private volatile double alignWeight = 1.0;
+    private volatile double cohesionWeight = 1.0;
+    private volatile double separationWeight = 1.5;
+    private volatile long stepNanos;
+
+    // Results read by the UI thread
+    private volatile FlockSnapshot snapshot = FlockSnapshot.EMPTY;
+    private volatile int stepsPerSecond;
+    private volatile double averageStepNanos;
+    private long stepCount;
+
+    public FlockSimulationLoop(Flock flock, double stepsPerSecond) {
+        this.flock = flock;
+        setStepRate(stepsPerSecond);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "flock-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void setWeights(double align, double cohesion, double separation) {
+        this.alignWeight = align;
+        this.cohesionWeight = cohesion;
+        this.separationWeight = separation;
+    }
+
+    // Simulation steps per second of wall-clock time
+    public void setStepRate(double stepsPerSecond) {
+        this.stepNanos = (long) (1e9 / stepsPerSecond);
+    }
+
+    // Queue a boid to be added before the next step
+    public void addBoid(Boid boid) {
+        pendingBoids.add(boid);
+    }
+
+    public FlockSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Measured simulation steps per second, updated once a second
+    public int getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    // Smoothed time one step takes to compute, excluding any sleeping
+    public double getStepMillis() {
+        return averageStepNanos / 1e6;
+    }
+
+    // Steps scheduled per rendered frame at the given frame rate
+    public double getStepsPerFrame(double frameRate) {
+        return 1e9 / stepNanos / frameRate;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long rateStart = previous;
+        int rateSteps = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+
+            long interval = stepNanos;
+            int steps = 0;
+            while (accumulator >= interval && steps < MAX_CATCH_UP_STEPS) {
+                addPendingBoids();
+                long stepStart = System.nanoTime();
+                flock.step(alignWeight, cohesionWeight, separationWeight);
+                averageStepNanos += (System.nanoTime() - stepStart - averageStepNanos) * 0.1;
+                accumulator -= interval;
+                stepCount++;
+                steps++;
+            }
+
+            // Drop the backlog we could not catch up on
+            if (steps == MAX_CATCH_UP_STEPS) {
+                accumulator = 0;
+            }
+
+            if (steps > 0) {
+                publish();
+                rateSteps += steps;
+            } else if (!pendingBoids.isEmpty()) {
+                addPendingBoids();
+                publish();
+            }
+
+            if (now - rateStart >= 1_000_000_000L) {
+                stepsPerSecond = (int) Math.round(rateSteps * 1e9 / (now - rateStart));
+                rateStart = now;
+                rateSteps = 0;
+            }
+
+            // Sleep until the next step is due
+            long wait = interval - accumulator;
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    private void addPendingBoids() {
+        Boid boid;
+        while ((boid = pendingBoids.poll()) != null) {
+            flock.addBoid(boid);
+        }
+    }
+
+    private void publish() {
+        snapshot = new FlockSnapshot(flock.getState(), flock.size(), stepCount);
+    }
+}
@@ -0,0 +1,131 @@
+package Java.Boids;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the flock after a simulation step. The simulation
+ * thread publishes a new snapshot after each batch of steps, and the
+ * panel only ever draws the latest one, so painting never touches the
+ * arrays the simulation is writing.
+ */
+final class FlockSnapshot {
+    static final FlockSnapshot EMPTY = new FlockSnapshot(new FlockState(1), 0, 0);
+
+    // Triangle shared by every boid, pointing up before rotation
+    private static final Path2D SHAPE = createShape(FlockState.BOID_SIZE);
+
+    private final int count;
+    private final long step;
+    private final double[] x, y;
+    private final double[] vx, vy;
+    private final double[] alignX, alignY;
+    private final double[] cohesionX, cohesionY;
+    private final double[] separationX, separationY;
+
+    FlockSnapshot(FlockState state, int count, long step) {
+        this.count = count;
+        this.step = step;
+        x = Arrays.copyOf(state.px, count);
+        y = Arrays.copyOf(state.py, count);
+        vx = Arrays.copyOf(state.vx, count);
+        vy = Arrays.copyOf(state.vy, count);
+        alignX = Arrays.copyOf(state.alignX, count);
+        alignY = Arrays.copyOf(state.alignY, count);
+        cohesionX = Arrays.copyOf(state.cohesionX, count);
+        cohesionY = Arrays.copyOf(state.cohesionY, count);
+        separationX = Arrays.copyOf(state.separationX, count);
+        separationY = Arrays.copyOf(state.separationY, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Number of simulation steps taken when this snapshot was made
+    public long getStep() {
+        return step;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getVelocityX(int i) {
+        return vx[i];
+    }
+
+    public double getVelocityY(int i) {
+        return vy[i];
+    }
+
+    // Draw every boid and optionally visualize forces
+    public void draw(Graphics2D g2d, boolean visualizeForces) {
+        for (int i = 0; i < count; i++) {
+            // Calculate heading angle
+            double theta = Math.atan2(vy[i], vx[i]) + Math.PI/2;
+
+            // Draw boid as a triangle
+            AffineTransform transform = new AffineTransform();
+            transform.translate(x[i], y[i]);
+            transform.rotate(theta);
+
+            g2d.setColor(Color.WHITE);
+            g2d.fill(transform.createTransformedShape(SHAPE));
+            g2d.setColor(Color.BLACK);
+            g2d.draw(transform.createTransformedShape(SHAPE));
+
+            if (visualizeForces) {
+                drawForces(g2d, i);
+            }
+        }
+    }
+
+    // Draw only the force vectors, for renderers that draw the boids themselves
+    public void drawForces(Graphics2D g2d) {
+        for (int i = 0; i < count; i++) {
+            drawForces(g2d, i);
+        }
+    }
+
+    private void drawForces(Graphics2D g2d, int i) {
+        double forceScale = 100; // Scale up forces for visibility
+
+        // Alignment force - blue
+        g2d.setColor(Color.BLUE);
+        drawForce(g2d, i, alignX[i], alignY[i], forceScale);
+
+        // Cohesion force - green
+        g2d.setColor(Color.GREEN);
+        drawForce(g2d, i, cohesionX[i], cohesionY[i], forceScale);
+
+        // Separation force - red
+        g2d.setColor(Color.RED);
+        drawForce(g2d, i, separationX[i], separationY[i], forceScale);
+    }
+
+    private void drawForce(Graphics2D g2d, int i, double forceX, double forceY, double scale) {
+        g2d.drawLine(
+            (int) x[i],
+            (int) y[i],
+            (int) (x[i] + forceX * scale),
+            (int) (y[i] + forceY * scale)
+        );
+    }
+
+    static Path2D createShape(double r) {
+        Path2D shape = new Path2D.Double();
+        shape.moveTo(0, -r * 2);
+        shape.lineTo(-r, r * 2);
+        shape.lineTo(r, r * 2);
+        shape.closePath();
+        return shape;
+    }
+}
@@ -0,0 +1,574 @@
+package Java.Boids;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Structure-of-arrays storage for a whole flock. Positions, velocities and
+ * accelerations live in primitive arrays, and the three steering forces are
+ * computed together in a single pass over each boid's neighbors, so a step
+ * does not allocate any objects.
+ *
+ * Steps are synchronous and double-buffered: every boid reads the current
+ * positions and velocities and writes into the next buffers, which are
+ * swapped in once all boids are done. Boids are split into fixed-size
+ * chunks that run on a ForkJoinPool. Each boid's result only depends on
+ * the current buffers, so the outcome is the same for any thread count.
+ *
+ * Neighbors are either every boid within the perception radii (metric
+ * mode, found by brute force, the spatial grid or Verlet lists) or each
+ * boid's k nearest boids found through a k-d tree (topological mode).
+ * The search structures are created the first time they are used.
+ */
+class FlockState {
+    static final double MAX_SPEED = 3.0;
+    static final double MAX_FORCE = 0.05;
+    static final double BOID_SIZE = 3.0;
+
+    // Simulation area the boids wrap around in
+    static final double WIDTH = 800;
+    static final double HEIGHT = 600;
+
+    // Extra radius added to cached neighbor lists
+    static final double VERLET_SKIN = 20;
+
+    private static final double COHESION_RADIUS_SQ = Boid.COHESION_RADIUS * Boid.COHESION_RADIUS;
+    private static final double ALIGN_RADIUS_SQ = Boid.ALIGN_RADIUS * Boid.ALIGN_RADIUS;
+    private static final double SEPARATION_RADIUS_SQ = Boid.SEPARATION_RADIUS * Boid.SEPARATION_RADIUS;
+
+    // Boids per parallel task
+    private static final int CHUNK_SIZE = 256;
+
+    private int size;
+
+    // Current boid state
+    double[] px, py;
+    double[] vx, vy;
+    double[] ax, ay;
+
+    // State being written by the step in progress
+    private double[] nextPx, nextPy;
+    private double[] nextVx, nextVy;
+
+    // Weighted steering forces from the last step, kept for visualization
+    double[] alignX, alignY;
+    double[] cohesionX, cohesionY;
+    double[] separationX, separationY;
+
+    // Index list used when every boid is a neighbor candidate
+    private int[] allIndices;
+
+    // Reusable tasks, one per chunk, so steps do not allocate
+    private StepTask[] tasks = new StepTask[0];
+    private final StepAction stepAction = new StepAction();
+
+    // Neighbor search structures
+    private SpatialGrid spatialGrid;
+    private VerletLists verletLists;
+    private KdTree kdTree;
+
+    // Parameters of the step in progress, read by the tasks
+    private double alignWeight;
+    private double cohesionWeight;
+    private double separationWeight;
+    private SpatialGrid grid;
+    private VerletLists lists;
+    private KdTree tree;
+    private int nearestCount;
+
+    // Distance test for the grid and brute-force searches; null tests inline
+    private NeighborKernel kernel;
+
+    // Reduced-quality settings, see setNeighborStride and setStaggeredForces
+    private int neighborStride = 1;
+    private boolean staggeredForces;
+    private long stepCount;
+
+    public FlockState(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Use a separate distance kernel (such as the SIMD one) to find the
+     * boids within the largest perception radius, and take their squared
+     * distances from it instead of measuring them in the force pass.
+     * Applies to the grid and brute-force searches; null restores the
+     * inline distance test. Results are identical either way.
+     */
+    public void setNeighborKernel(NeighborKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Only consider every stride-th neighbor candidate of each boid, which
+     * cuts the cost of the force pass at the price of noisier averages.
+     * 1 considers every candidate. The k nearest neighbors in topological
+     * mode are not subsampled.
+     */
+    public void setNeighborStride(int stride) {
+        this.neighborStride = Math.max(1, stride);
+    }
+
+    /**
+     * Recompute each boid's steering forces only on every other step and
+     * reuse the previous ones in between, alternating between even and odd
+     * boids. This halves the neighbor searches per step while every boid
+     * still moves each step.
+     */
+    public void setStaggeredForces(boolean staggered) {
+        this.staggeredForces = staggered;
+    }
+
+    // Cached neighbor lists, or null if Verlet lists were never used
+    public VerletLists getVerletLists() {
+        return verletLists;
+    }
+
+    // Append a boid and return its index
+    public int add(double x, double y, double velocityX, double velocityY) {
+        if (size == px.length) {
+            grow(size * 2);
+        }
+        px[size] = x;
+        py[size] = y;
+        vx[size] = velocityX;
+        vy[size] = velocityY;
+        allIndices[size] = size;
+        return size++;
+    }
+
+    // Append a boid with a random heading and a speed between 1 and 2
+    public int addRandom(double x, double y, Random random) {
+        double angle = random.nextDouble() * Math.PI * 2;
+        double speed = random.nextDouble() + 1;
+        return add(x, y, Math.cos(angle) * speed, Math.sin(angle) * speed);
+    }
+
+    /**
+     * Advance every boid by one step. With nearestCount above zero each
+     * boid reacts to that many nearest boids; otherwise the given search
+     * finds the boids within the perception radii.
+     */
+    public void step(double alignWeight, double cohesionWeight, double separationWeight,
+                     NeighborSearch search, int nearestCount, ForkJoinPool pool) {
+        this.alignWeight = alignWeight;
+        this.cohesionWeight = cohesionWeight;
+        this.separationWeight = separationWeight;
+        this.nearestCount = nearestCount;
+        grid = null;
+        lists = null;
+        tree = null;
+
+        // Bring the chosen search structure up to date with the current positions
+        if (nearestCount > 0) {
+            if (kdTree == null) {
+                kdTree = new KdTree();
+            }
+            tree = kdTree;
+            tree.rebuild(px, py, size, pool);
+        } else if (search == NeighborSearch.GRID) {
+            if (spatialGrid == null) {
+                spatialGrid = new SpatialGrid(WIDTH, HEIGHT, Boid.MAX_PERCEPTION_RADIUS);
+            }
+            grid = spatialGrid;
+            grid.rebuild(px, py, size);
+        } else if (search == NeighborSearch.VERLET) {
+            if (verletLists == null) {
+                verletLists = new VerletLists(WIDTH, HEIGHT, Boid.MAX_PERCEPTION_RADIUS, VERLET_SKIN);
+            }
+            lists = verletLists;
+            lists.update(px, py, size, pool);
+        }
+
+        ensureTasks();
+        stepAction.reinitialize();
+        pool.invoke(stepAction);
+        stepCount++;
+
+        // Swap the buffers
+        double[] temp = px;
+        px = nextPx;
+        nextPx = temp;
+        temp = py;
+        py = nextPy;
+        nextPy = temp;
+        temp = vx;
+        vx = nextVx;
+        nextVx = temp;
+        temp = vy;
+        vy = nextVy;
+        nextVy = temp;
+    }
+
+    private void ensureTasks() {
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (tasks.length != chunks) {
+            StepTask[] resized = Arrays.copyOf(tasks, chunks);
+            for (int c = tasks.length; c < chunks; c++) {
+                resized[c] = new StepTask();
+            }
+            tasks = resized;
+        }
+        for (int c = 0; c < chunks; c++) {
+            tasks[c].start = c * CHUNK_SIZE;
+            tasks[c].end = Math.min(size, (c + 1) * CHUNK_SIZE);
+        }
+    }
+
+    // Root task that forks one task per chunk and waits for all of them
+    private class StepAction extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (StepTask task : tasks) {
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Updates one chunk of boids. Each task keeps its own neighbor sums, so
+     * tasks never share mutable scratch state.
+     */
+    private class StepTask extends RecursiveAction {
+        int start;
+        int end;
+
+        // Neighbor sums for the boid currently being updated
+        private double alignSumX, alignSumY;
+        private int alignCount;
+        private double cohesionSumX, cohesionSumY;
+        private int cohesionCount;
+        private double separationSumX, separationSumY;
+        private int separationCount;
+
+        // Output of steer(), to avoid returning a vector object
+        private double steerX, steerY;
+
+        // Heap reused for k-nearest queries
+        private final KdTree.NearestSearch search = new KdTree.NearestSearch();
+
+        // Indices and squared distances reported by the neighbor kernel
+        private int[] hits = new int[0];
+        private double[] hitDistSq = new double[0];
+
+        @Override
+        protected void compute() {
+            for (int i = start; i < end; i++) {
+                if (staggeredForces && ((i + stepCount) & 1) != 0) {
+                    // Reuse the forces from the previous step
+                    ax[i] += alignX[i] + cohesionX[i] + separationX[i];
+                    ay[i] += alignY[i] + cohesionY[i] + separationY[i];
+                    update(i);
+                    continue;
+                }
+
+                resetSums();
+                if (tree != null) {
+                    tree.nearest(px[i], py[i], i, nearestCount, search);
+                    accumulateNearest(i);
+                } else if (lists != null) {
+                    if (lists.dirty[i]) {
+                        // The list is stale, so search the refreshed grid
+                        accumulateCells(i, lists.grid);
+                    } else {
+                        // Dirty boids may be missing from the list, so skip
+                        // them there and check them all separately
+                        accumulate(i, lists.neighbors, lists.start[i], lists.start[i + 1],
+                                   lists.dirtyCount > 0 ? lists.dirty : null);
+                        accumulate(i, lists.dirtyList, 0, lists.dirtyCount, null);
+                    }
+                } else if (grid == null) {
+                    if (kernel != null) {
+                        accumulateWithin(i, px, py, null, 0, size);
+                    } else {
+                        accumulate(i, allIndices, 0, size, null);
+                    }
+                } else {
+                    accumulateCells(i, grid);
+                }
+
+                applyForces(i);
+                update(i);
+            }
+        }
+
+        /**
+         * Add the neighbors of boid i from the 3x3 block of grid cells
+         * around it. Neighboring cells in a row are stored back to back,
+         * so each row of the block is one contiguous range.
+         */
+        private void accumulateCells(int i, SpatialGrid grid) {
+            int col = grid.column(px[i]);
+            int row = grid.row(py[i]);
+            int minCol = Math.max(0, col - 1);
+            int maxCol = Math.min(grid.getCols() - 1, col + 1);
+            int maxRow = Math.min(grid.getRows() - 1, row + 1);
+            for (int r = Math.max(0, row - 1); r <= maxRow; r++) {
+                int from = grid.cellStart(minCol + r * grid.getCols());
+                int to = grid.cellEnd(maxCol + r * grid.getCols());
+                if (kernel != null) {
+                    accumulateWithin(i, grid.getSortedX(), grid.getSortedY(), grid.getItems(), from, to);
+                } else {
+                    accumulate(i, grid.getItems(), from, to, null);
+                }
+            }
+        }
+
+        /**
+         * Let the kernel pick the entries of xs/ys in [from, to) within the
+         * largest perception radius, then add those boids to the sums at
+         * the distances it measured. ids maps entries to boid indices; null
+         * means they are the same.
+         */
+        private void accumulateWithin(int i, double[] xs, double[] ys, int[] ids, int from, int to) {
+            if (hits.length < to - from) {
+                hits = new int[Math.max(to - from, hits.length * 2)];
+                hitDistSq = new double[hits.length];
+            }
+            int count = kernel.withinRadius(xs, ys, from, to, px[i], py[i], COHESION_RADIUS_SQ, hits, hitDistSq);
+            for (int h = i % neighborStride; h < count; h += neighborStride) {
+                int k = hits[h];
+                int j = ids == null ? k : ids[k];
+                if (j != i) {
+                    addWithinRadius(i, j, hitDistSq[k - from]);
+                }
+            }
+        }
+
+        /**
+         * Add the neighbors of boid i found among the given candidates to
+         * the sums, ignoring candidates flagged in skip (if given).
+         */
+        private void accumulate(int i, int[] candidates, int from, int to, boolean[] skip) {
+            for (int k = from + i % neighborStride; k < to; k += neighborStride) {
+                int j = candidates[k];
+                if (j == i || (skip != null && skip[j])) {
+                    continue;
+                }
+                addNeighbor(i, j);
+            }
+        }
+
+        // Add boid j to the sums of every behavior whose radius it is within
+        private void addNeighbor(int i, int j) {
+            double dx = px[i] - px[j];
+            double dy = py[i] - py[j];
+            double distSq = dx * dx + dy * dy;
+            if (distSq < COHESION_RADIUS_SQ) {
+                addWithinRadius(i, j, distSq);
+            }
+        }
+
+        /**
+         * Add boid j, at the given squared distance within the cohesion
+         * radius (the largest), to the sums. Only separation needs the
+         * distance itself.
+         */
+        private void addWithinRadius(int i, int j, double distSq) {
+            cohesionSumX += px[j];
+            cohesionSumY += py[j];
+            cohesionCount++;
+            if (distSq < ALIGN_RADIUS_SQ) {
+                alignSumX += vx[j];
+                alignSumY += vy[j];
+                alignCount++;
+            }
+            if (distSq < SEPARATION_RADIUS_SQ) {
+                // Unit vector away from the neighbor, weighted by 1/distance
+                double dx = px[i] - px[j];
+                double dy = py[i] - py[j];
+                double d = Math.sqrt(distSq);
+                double inverse = 1.0 / d;
+                if (d != 0) {
+                    dx /= d;
+                    dy /= d;
+                }
+                separationSumX += dx * inverse;
+                separationSumY += dy * inverse;
+                separationCount++;
+            }
+        }
+
+        // Add the k nearest boids to all three sums, regardless of distance
+        private void accumulateNearest(int i) {
+            double x = px[i];
+            double y = py[i];
+
+            for (int k = 0; k < search.count; k++) {
+                int j = search.index[k];
+                double dx = x - px[j];
+                double dy = y - py[j];
+                double d = Math.sqrt(search.distSq[k]);
+
+                cohesionSumX += px[j];
+                cohesionSumY += py[j];
+                alignSumX += vx[j];
+                alignSumY += vy[j];
+
+                double inverse = 1.0 / d;
+                if (d != 0) {
+                    dx /= d;
+                    dy /= d;
+                }
+                separationSumX += dx * inverse;
+                separationSumY += dy * inverse;
+            }
+
+            cohesionCount = search.count;
+            alignCount = search.count;
+            separationCount = search.count;
+        }
+
+        private void applyForces(int i) {
+            // Steer toward average direction of nearby boids
+            if (alignCount > 0) {
+                double scale = 1.0 / alignCount;
+                steer(i, alignSumX * scale, alignSumY * scale);
+            } else {
+                steerX = 0;
+                steerY = 0;
+            }
+            alignX[i] = steerX * alignWeight;
+            alignY[i] = steerY * alignWeight;
+
+            // Steer toward center of nearby boids
+            if (cohesionCount > 0) {
+                double scale = 1.0 / cohesionCount;
+                steer(i, cohesionSumX * scale - px[i], cohesionSumY * scale - py[i]);
+            } else {
+                steerX = 0;
+                steerY = 0;
+            }
+            cohesionX[i] = steerX * cohesionWeight;
+            cohesionY[i] = steerY * cohesionWeight;
+
+            // Steer away from nearby boids to avoid crowding
+            if (separationCount > 0) {
+                double scale = 1.0 / separationCount;
+                steer(i, separationSumX * scale, separationSumY * scale);
+            } else {
+                steerX = 0;
+                steerY = 0;
+            }
+            separationX[i] = steerX * separationWeight;
+            separationY[i] = steerY * separationWeight;
+
+            ax[i] += alignX[i];
+            ay[i] += alignY[i];
+            ax[i] += cohesionX[i];
+            ay[i] += cohesionY[i];
+            ax[i] += separationX[i];
+            ay[i] += separationY[i];
+        }
+
+        // Steering force toward a desired direction, limited to the max force
+        private void steer(int i, double desiredX, double desiredY) {
+            double m = Math.sqrt(desiredX * desiredX + desiredY * desiredY);
+            if (m != 0) {
+                desiredX /= m;
+                desiredY /= m;
+            }
+
+            double x = desiredX * MAX_SPEED - vx[i];
+            double y = desiredY * MAX_SPEED - vy[i];
+
+            m = Math.sqrt(x * x + y * y);
+            if (m > MAX_FORCE) {
+                x = x / m * MAX_FORCE;
+                y = y / m * MAX_FORCE;
+            }
+            steerX = x;
+            steerY = y;
+        }
+
+        // Integrate boid i into the next buffers and wrap around screen edges
+        private void update(int i) {
+            double velocityX = vx[i] + ax[i];
+            double velocityY = vy[i] + ay[i];
+
+            double m = Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+            if (m > MAX_SPEED) {
+                velocityX = velocityX / m * MAX_SPEED;
+                velocityY = velocityY / m * MAX_SPEED;
+            }
+
+            double x = px[i] + velocityX;
+            double y = py[i] + velocityY;
+
+            double r = BOID_SIZE;
+            if (x < -r) x = WIDTH + r;
+            if (y < -r) y = HEIGHT + r;
+            if (x > WIDTH + r) x = -r;
+            if (y > HEIGHT + r) y = -r;
+
+            nextPx[i] = x;
+            nextPy[i] = y;
+            nextVx[i] = velocityX;
+            nextVy[i] = velocityY;
+
+            // Reset acceleration
+            ax[i] = 0;
+            ay[i] = 0;
+        }
+
+        private void resetSums() {
+            alignSumX = 0;
+            alignSumY = 0;
+            alignCount = 0;
+            cohesionSumX = 0;
+            cohesionSumY = 0;
+            cohesionCount = 0;
+            separationSumX = 0;
+            separationSumY = 0;
+            separationCount = 0;
+        }
+    }
+
+    private void allocate(int capacity) {
+        px = new double[capacity];
+        py = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        nextPx = new double[capacity];
+        nextPy = new double[capacity];
+        nextVx = new double[capacity];
+        nextVy = new double[capacity];
+        alignX = new double[capacity];
+        alignY = new double[capacity];
+        cohesionX = new double[capacity];
+        cohesionY = new double[capacity];
+        separationX = new double[capacity];
+        separationY = new double[capacity];
+        allIndices = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        ax = Arrays.copyOf(ax, capacity);
+        ay = Arrays.copyOf(ay, capacity);
+        nextPx = Arrays.copyOf(nextPx, capacity);
+        nextPy = Arrays.copyOf(nextPy, capacity);
+        nextVx = Arrays.copyOf(nextVx, capacity);
+        nextVy = Arrays.copyOf(nextVy, capacity);
+        alignX = Arrays.copyOf(alignX, capacity);
+        alignY = Arrays.copyOf(alignY, capacity);
+        cohesionX = Arrays.copyOf(cohesionX, capacity);
+        cohesionY = Arrays.copyOf(cohesionY, capacity);
+        separationX = Arrays.copyOf(separationX, capacity);
+        separationY = Arrays.copyOf(separationY, capacity);
+        allIndices = Arrays.copyOf(allIndices, capacity);
+    }
+}
@@ -5,9 +5,9 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
-import java.util.ArrayList;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -15,11 +15,37 @@ import java.util.Random;
  * This demonstrates object-oriented principles in creative coding
  */
 public class FlockingSimulation extends JFrame implements ChangeListener {
+    /**
+     * Ways of drawing the boids, from best looking to cheapest
+     */
+    enum RenderMode {
+        VECTOR("Vector"),
+        SPRITE("Sprites"),
+        RASTER("Sprites (raster)");
+        
+        private final String label;
+        
+        RenderMode(String label) {
+            this.label = label;
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
     private FlockPanel panel;
     private JSlider alignmentSlider;
     private JSlider cohesionSlider;
     private JSlider separationSlider;
+    private JSlider stepsSlider;
+    private JSlider nearestSlider;
     private JCheckBox visualizeCheckbox;
+    private JCheckBox simdCheckbox;
+    private JCheckBox adaptiveCheckbox;
+    private JComboBox<NeighborSearch> searchBox;
+    private JComboBox<RenderMode> rendererBox;
     
     public FlockingSimulation() {
         setTitle("Flocking Behavior Simulation");
@@ -52,6 +78,21 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
         separationPanel.add(separationSlider, BorderLayout.CENTER);
         controlPanel.add(separationPanel);
         
+        JPanel stepsPanel = new JPanel(new BorderLayout());
+        stepsPanel.add(new JLabel("Steps/Frame:"), BorderLayout.WEST);
+        stepsSlider = new JSlider(JSlider.HORIZONTAL, 1, 8, 1);
+        stepsSlider.addChangeListener(this);
+        stepsPanel.add(stepsSlider, BorderLayout.CENTER);
+        controlPanel.add(stepsPanel);
+        
+        // Nearest neighbors per boid; 0 uses the perception radii instead
+        JPanel nearestPanel = new JPanel(new BorderLayout());
+        nearestPanel.add(new JLabel("Nearest k:"), BorderLayout.WEST);
+        nearestSlider = new JSlider(JSlider.HORIZONTAL, 0, 16, 0);
+        nearestSlider.addChangeListener(this);
+        nearestPanel.add(nearestSlider, BorderLayout.CENTER);
+        controlPanel.add(nearestPanel);
+        
         // Create visualization checkbox
         visualizeCheckbox = new JCheckBox("Visualize Forces");
         visualizeCheckbox.addActionListener(new ActionListener() {
@@ -62,6 +103,54 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
         });
         controlPanel.add(visualizeCheckbox);
         
+        // Create neighbor search selection
+        JPanel searchPanel = new JPanel(new BorderLayout());
+        searchPanel.add(new JLabel("Neighbor Search:"), BorderLayout.WEST);
+        searchBox = new JComboBox<>(NeighborSearch.values());
+        searchBox.setSelectedItem(NeighborSearch.GRID);
+        searchBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setNeighborSearch((NeighborSearch) searchBox.getSelectedItem());
+            }
+        });
+        searchPanel.add(searchBox, BorderLayout.CENTER);
+        controlPanel.add(searchPanel);
+        
+        // Create distance kernel checkbox (SIMD when the Vector API is available);
+        // it gives the same result but has not measured faster than the inline test
+        simdCheckbox = new JCheckBox("SIMD Distances (" + NeighborKernel.vector().getName() + ", not faster)");
+        simdCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setNeighborKernel(simdCheckbox.isSelected() ? NeighborKernel.vector() : null);
+            }
+        });
+        controlPanel.add(simdCheckbox);
+        
+        // Create renderer selection (vector paths look best, sprites are faster)
+        JPanel rendererPanel = new JPanel(new BorderLayout());
+        rendererPanel.add(new JLabel("Renderer:"), BorderLayout.WEST);
+        rendererBox = new JComboBox<>(RenderMode.values());
+        rendererBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setRenderMode((RenderMode) rendererBox.getSelectedItem());
+            }
+        });
+        rendererPanel.add(rendererBox, BorderLayout.CENTER);
+        controlPanel.add(rendererPanel);
+        
+        // Create adaptive quality checkbox (lowers quality to hold the frame rate)
+        adaptiveCheckbox = new JCheckBox("Adaptive Quality", true);
+        adaptiveCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setAdaptiveQuality(adaptiveCheckbox.isSelected());
+            }
+        });
+        controlPanel.add(adaptiveCheckbox);
+        
         // Add button to add more boids
         JButton addButton = new JButton("Add 10 Boids");
         addButton.addActionListener(new ActionListener() {
@@ -92,6 +181,8 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
             cohesionSlider.getValue() / 10.0,
             separationSlider.getValue() / 10.0
         );
+        panel.setStepsPerFrame(stepsSlider.getValue());
+        panel.setTopologicalNeighbors(nearestSlider.getValue());
     }
     
     public static void main(String[] args) {
@@ -104,22 +195,46 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
     private class FlockPanel extends JPanel implements ActionListener, MouseListener {
         private static final int WIDTH = 800;
         private static final int HEIGHT = 600;
+        private static final double FRAME_RATE = 60;
+        
+        // Upper bound on boids added by clicks and the add button
+        private static final int MAX_BOIDS = 20000;
         
         private Flock flock;
+        private FlockSimulationLoop simulation;
         private Timer timer;
         private Random random;
         
-        private double alignWeight = 1.0;
-        private double cohesionWeight = 1.0;
-        private double separationWeight = 1.5;
         private boolean visualizeForces = false;
         
+        // Renderer state
+        private RenderMode renderMode = RenderMode.VECTOR;
+        private BoidSpriteAtlas spriteAtlas;
+        private BufferedImage backBuffer;
+        
+        // Rendered frames per second, measured in paintComponent
+        private int frameCount = 0;
+        private long lastFpsTime = 0;
+        private int framesPerSecond = 0;
+        
+        // Lowers quality when painting or stepping runs over the frame budget
+        private FrameBudgetController budget;
+        private boolean adaptiveQuality = true;
+        private FrameBudgetController.Level quality = FrameBudgetController.Level.FULL;
+        private double paintMillis = 0;
+        
+        // Boids requested so far, including those not yet added by the simulation
+        private int boidCount = 0;
+        
         public FlockPanel() {
             setPreferredSize(new Dimension(WIDTH, HEIGHT));
             setBackground(Color.DARK_GRAY);
             
             random = new Random();
             flock = new Flock();
+            spriteAtlas = new BoidSpriteAtlas(FlockSnapshot.createShape(FlockState.BOID_SIZE));
+            simulation = new FlockSimulationLoop(flock, FRAME_RATE);
+            budget = new FrameBudgetController(FRAME_RATE);
             
             // Add initial boids
             addBoids(100);
@@ -127,6 +242,9 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
             // Add mouse listener to add boids
             addMouseListener(this);
             
+            // Run the physics on its own thread
+            simulation.start();
+            
             // Start animation timer
             timer = new Timer(16, this); // ~60 FPS
             timer.start();
@@ -134,37 +252,138 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
         
         public void addBoids(int count) {
             for (int i = 0; i < count; i++) {
-                flock.addBoid(new Boid(
-                    random.nextDouble() * WIDTH,
-                    random.nextDouble() * HEIGHT,
-                    random
-                ));
+                addBoid(random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT);
+            }
+        }
+        
+        // Add a boid unless the cap is reached or even the lowest quality is over budget
+        private void addBoid(double x, double y) {
+            if (boidCount >= MAX_BOIDS || (adaptiveQuality && budget.isSaturated())) {
+                return;
             }
+            simulation.addBoid(new Boid(x, y, random));
+            boidCount++;
         }
         
         public void setWeights(double align, double cohesion, double separation) {
-            this.alignWeight = align;
-            this.cohesionWeight = cohesion;
-            this.separationWeight = separation;
+            simulation.setWeights(align, cohesion, separation);
+        }
+        
+        // Run several simulation steps for each rendered frame
+        public void setStepsPerFrame(int steps) {
+            simulation.setStepRate(FRAME_RATE * steps);
         }
         
         public void setVisualizeForces(boolean visualize) {
             this.visualizeForces = visualize;
         }
         
+        public void setNeighborSearch(NeighborSearch neighborSearch) {
+            flock.setNeighborSearch(neighborSearch);
+        }
+        
+        public void setTopologicalNeighbors(int k) {
+            flock.setTopologicalNeighbors(k);
+        }
+        
+        public void setNeighborKernel(NeighborKernel kernel) {
+            flock.setNeighborKernel(kernel);
+        }
+        
+        public void setRenderMode(RenderMode renderMode) {
+            this.renderMode = renderMode;
+        }
+        
+        public void setAdaptiveQuality(boolean adaptive) {
+            this.adaptiveQuality = adaptive;
+            if (!adaptive) {
+                setQuality(budget.reset());
+            }
+        }
+        
+        private void setQuality(FrameBudgetController.Level level) {
+            if (level != quality) {
+                quality = level;
+                flock.setNeighborStride(level.getNeighborStride());
+                flock.setStaggeredForces(level.isStaggeredForces());
+            }
+        }
+        
         @Override
         protected void paintComponent(Graphics g) {
+            long paintStart = System.nanoTime();
             super.paintComponent(g);
             
             Graphics2D g2d = (Graphics2D) g;
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             
-            // Run the flock
-            flock.run(g2d, alignWeight, cohesionWeight, separationWeight, visualizeForces);
+            // Draw the latest state published by the simulation thread
+            FlockSnapshot snapshot = simulation.getSnapshot();
+            RenderMode renderer = quality.renderer(renderMode);
+            switch (renderer) {
+                case VECTOR:
+                    snapshot.draw(g2d, visualizeForces);
+                    break;
+                case SPRITE:
+                    spriteAtlas.draw(g2d, snapshot);
+                    break;
+                case RASTER:
+                    drawRaster(g2d, snapshot);
+                    break;
+            }
+            if (visualizeForces && renderer != RenderMode.VECTOR) {
+                snapshot.drawForces(g2d);
+            }
+            
+            // Calculate FPS
+            frameCount++;
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastFpsTime > 1000) {
+                framesPerSecond = frameCount;
+                frameCount = 0;
+                lastFpsTime = currentTime;
+            }
+            
+            // Draw rates
+            g2d.setColor(Color.WHITE);
+            g2d.drawString("Boids: " + snapshot.size(), 10, 20);
+            g2d.drawString("Sim: " + simulation.getStepsPerSecond() + " steps/s", 10, 40);
+            g2d.drawString("Render: " + framesPerSecond + " FPS", 10, 60);
+            g2d.drawString(String.format("Quality: %s (%.1f of %.1f ms)%s", quality,
+                budget.getFrameMillis(), budget.getBudgetMillis(),
+                boidCount >= MAX_BOIDS ? ", boid limit reached" : ""), 10, 80);
+            
+            // Neighbor list reuse, read without locking since it is only informational
+            VerletLists lists = flock.getState().getVerletLists();
+            if (lists != null && flock.getNeighborSearch() == NeighborSearch.VERLET) {
+                g2d.drawString(String.format("Verlet rebuilds: %.1f%%, %.1f ms each",
+                    lists.getRebuildRate() * 100, lists.getAverageBuildMillis()), 10, 100);
+            }
+            
+            paintMillis = (System.nanoTime() - paintStart) / 1e6;
+        }
+        
+        // Blit sprites into an int[] back buffer and draw it in one call
+        private void drawRaster(Graphics2D g2d, FlockSnapshot snapshot) {
+            int width = Math.max(1, getWidth());
+            int height = Math.max(1, getHeight());
+            if (backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+                backBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            
+            int[] raster = ((DataBufferInt) backBuffer.getRaster().getDataBuffer()).getData();
+            Arrays.fill(raster, getBackground().getRGB());
+            spriteAtlas.draw(raster, width, height, snapshot);
+            g2d.drawImage(backBuffer, 0, 0, null);
         }
         
         @Override
         public void actionPerformed(ActionEvent e) {
+            // Judge the last frame against the budget before drawing the next one
+            if (adaptiveQuality) {
+                double stepMillis = simulation.getStepMillis() * simulation.getStepsPerFrame(FRAME_RATE);
+                setQuality(budget.update(paintMillis, stepMillis));
+            }
             repaint();
         }
         
@@ -172,7 +391,7 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
         @Override
         public void mousePressed(MouseEvent e) {
             // Add a new boid at the mouse position
-            flock.addBoid(new Boid(e.getX(), e.getY(), random));
+            addBoid(e.getX(), e.getY());
         }
         
         @Override public void mouseReleased(MouseEvent e) {}
@@ -181,316 +400,3 @@ public class FlockingSimulation extends JFrame implements ChangeListener {
         @Override public void mouseExited(MouseEvent e) {}
     }
 }
-
-/**
- * Flock class to manage all boids
- */
-class Flock {
-    private ArrayList<Boid> boids;
-    
-    public Flock() {
-        boids = new ArrayList<>();
-    }
-    
-    public void addBoid(Boid boid) {
-        boids.add(boid);
-    }
-    
-    public void run(Graphics2D g2d, double alignWeight, double cohesionWeight, 
-                   double separationWeight, boolean visualizeForces) {
-        for (Boid boid : boids) {
-            // Apply flocking behavior with specified weights
-            boid.flock(boids, alignWeight, cohesionWeight, separationWeight);
-            
-            // Update and display the boid
-            boid.update();
-            boid.borders();
-            boid.display(g2d, visualizeForces);
-        }
-    }
-}
-
-/**
- * Boid class for individual flocking agents
- */
-class Boid {
-    private Vector2D position;
-    private Vector2D velocity;
-    private Vector2D acceleration;
-    private double r = 3.0;  // Size of boid
-    private double maxSpeed = 3.0;
-    private double maxForce = 0.05;
-    
-    // Store forces for visualization
-    private Vector2D alignForce;
-    private Vector2D cohesionForce;
-    private Vector2D separationForce;
-    
-    // Cache the triangle shape for efficiency
-    private Path2D shape;
-    
-    public Boid(double x, double y, Random random) {
-        position = new Vector2D(x, y);
-        
-        // Initialize with random velocity
-        double angle = random.nextDouble() * Math.PI * 2;
-        velocity = new Vector2D(Math.cos(angle), Math.sin(angle));
-        velocity.mult(random.nextDouble() + 1); // Random speed between 1 and 2
-        
-        acceleration = new Vector2D(0, 0);
-        
-        alignForce = new Vector2D(0, 0);
-        cohesionForce = new Vector2D(0, 0);
-        separationForce = new Vector2D(0, 0);
-        
-        // Create the triangle shape
-        shape = new Path2D.Double();
-        shape.moveTo(0, -r * 2);
-        shape.lineTo(-r, r * 2);
-        shape.lineTo(r, r * 2);
-        shape.closePath();
-    }
-    
-    public void flock(ArrayList<Boid> boids, double alignWeight, 
-                     double cohesionWeight, double separationWeight) {
-        // Calculate the three main forces
-        alignForce = align(boids);
-        cohesionForce = cohesion(boids);
-        separationForce = separation(boids);
-        
-        // Apply weights
-        alignForce.mult(alignWeight);
-        cohesionForce.mult(cohesionWeight);
-        separationForce.mult(separationWeight);
-        
-        // Add forces to acceleration
-        acceleration.add(alignForce);
-        acceleration.add(cohesionForce);
-        acceleration.add(separationForce);
-    }
-    
-    public void update() {
-        // Update velocity and position
-        velocity.add(acceleration);
-        velocity.limit(maxSpeed);
-        position.add(velocity);
-        
-        // Reset acceleration
-        acceleration.mult(0);
-    }
-    
-    // Steer toward average direction of nearby boids
-    private Vector2D align(ArrayList<Boid> boids) {
-        double perceptionRadius = 50;
-        Vector2D sum = new Vector2D(0, 0);
-        int count = 0;
-        
-        for (Boid other : boids) {
-            double d = dist(position, other.position);
-            
-            if (other != this && d < perceptionRadius) {
-                sum.add(other.velocity);
-                count++;
-            }
-        }
-        
-        if (count > 0) {
-            sum.mult(1.0 / count);
-            sum.normalize();
-            sum.mult(maxSpeed);
-            
-            Vector2D steer = sum.copy();
-            steer.sub(velocity);
-            steer.limit(maxForce);
-            return steer;
-        }
-        
-        return new Vector2D(0, 0);
-    }
-    
-    // Steer toward center of nearby boids
-    private Vector2D cohesion(ArrayList<Boid> boids) {
-        double perceptionRadius = 100;
-        Vector2D sum = new Vector2D(0, 0);
-        int count = 0;
-        
-        for (Boid other : boids) {
-            double d = dist(position, other.position);
-            
-            if (other != this && d < perceptionRadius) {
-                sum.add(other.position);
-                count++;
-            }
-        }
-        
-        if (count > 0) {
-            sum.mult(1.0 / count);
-            return seek(sum);
-        }
-        
-        return new Vector2D(0, 0);
-    }
-    
-    // Steer away from nearby boids to avoid crowding
-    private Vector2D separation(ArrayList<Boid> boids) {
-        double perceptionRadius = 50;
-        Vector2D sum = new Vector2D(0, 0);
-        int count = 0;
-        
-        for (Boid other : boids) {
-            double d = dist(position, other.position);
-            
-            if (other != this && d < perceptionRadius) {
-                Vector2D diff = new Vector2D(position.x - other.position.x, position.y - other.position.y);
-                diff.normalize();
-                diff.mult(1.0 / d); // Weight by distance (closer boids have more influence)
-                sum.add(diff);
-                count++;
-            }
-        }
-        
-        if (count > 0) {
-            sum.mult(1.0 / count);
-            sum.normalize();
-            sum.mult(maxSpeed);
-            
-            Vector2D steer = sum.copy();
-            steer.sub(velocity);
-            steer.limit(maxForce);
-            return steer;
-        }
-        
-        return new Vector2D(0, 0);
-    }
-    
-    // Calculate steering force towards a target
-    private Vector2D seek(Vector2D target) {
-        Vector2D desired = new Vector2D(target.x - position.x, target.y - position.y);
-        desired.normalize();
-        desired.mult(maxSpeed);
-        
-        Vector2D steer = desired.copy();
-        steer.sub(velocity);
-        steer.limit(maxForce);
-        return steer;
-    }
-    
-    // Wrap around screen edges
-    public void borders() {
-        if (position.x < -r) position.x = 800 + r;
-        if (position.y < -r) position.y = 600 + r;
-        if (position.x > 800 + r) position.x = -r;
-        if (position.y > 600 + r) position.y = -r;
-    }
-    
-    // Draw the boid and optionally visualize forces
-    public void display(Graphics2D g2d, boolean visualizeForces) {
-        // Calculate heading angle
-        double theta = Math.atan2(velocity.y, velocity.x) + Math.PI/2;
-        
-        // Draw boid as a triangle
-        AffineTransform transform = new AffineTransform();
-        transform.translate(position.x, position.y);
-        transform.rotate(theta);
-        
-        g2d.setColor(Color.WHITE);
-        g2d.fill(transform.createTransformedShape(shape));
-        g2d.setColor(Color.BLACK);
-        g2d.draw(transform.createTransformedShape(shape));
-        
-        // Visualize forces if enabled
-        if (visualizeForces) {
-            double forceScale = 100; // Scale up forces for visibility
-            
-            // Alignment force - blue
-            g2d.setColor(Color.BLUE);
-            drawForce(g2d, alignForce, forceScale);
-            
-            // Cohesion force - green
-            g2d.setColor(Color.GREEN);
-            drawForce(g2d, cohesionForce, forceScale);
-            
-            // Separation force - red
-            g2d.setColor(Color.RED);
-            drawForce(g2d, separationForce, forceScale);
-        }
-    }
-    
-    // Helper method to draw a force vector
-    private void drawForce(Graphics2D g2d, Vector2D force, double scale) {
-        Vector2D scaledForce = force.copy();
-        scaledForce.mult(scale);
-        g2d.drawLine(
-            (int) position.x, 
-            (int) position.y, 
-            (int) (position.x + scaledForce.x), 
-            (int) (position.y + scaledForce.y)
-        );
-    }
-    
-    // Helper method to calculate distance between vectors
-    private double dist(Vector2D v1, Vector2D v2) {
-        double dx = v1.x - v2.x;
-        double dy = v1.y - v2.y;
-        return Math.sqrt(dx * dx + dy * dy);
-    }
-}
-
-/**
- * Vector class for 2D vector operations
- */
-class Vector2D {
-    public double x;
-    public double y;
-    
-    public Vector2D(double x, double y) {
-        this.x = x;
-        this.y = y;
-    }
-    
-    public void add(Vector2D v) {
-        x += v.x;
-        y += v.y;
-    }
-    
-    public void sub(Vector2D v) {
-        x -= v.x;
-        y -= v.y;
-    }
-    
-    public void mult(double scalar) {
-        x *= scalar;
-        y *= scalar;
-    }
-    
-    public double mag() {
-        return Math.sqrt(x * x + y * y);
-    }
-    
-    public void limit(double max) {
-        if (mag() > max) {
-            normalize();
-            mult(max);
-        }
-    }
-    
-    public void normalize() {
-        double m = mag();
-        if (m != 0) {
-            x /= m;
-            y /= m;
-        }
-    }
-    
-    public double heading() {
-        return Math.atan2(y, x);
-    }
-    
-    public static Vector2D fromAngle(double angle) {
-        return new Vector2D(Math.cos(angle), Math.sin(angle));
-    }
-    
-    public Vector2D copy() {
-        return new Vector2D(x, y);
-    }
-}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package Java.Boids;
+
+/**
+ * Keeps the flock within a per-frame time budget by trading quality for
+ * speed. Every frame it is given the time spent painting and the time
+ * the simulation spent stepping for that frame; the larger of the two
+ * (they run on different threads) is smoothed and compared with the
+ * budget. After a run of frames over budget it drops one quality level,
+ * and after a longer run well under budget it restores one, so it does
+ * not flip back and forth at the edge.
+ */
+class FrameBudgetController {
+    /**
+     * Quality levels from best to cheapest. Each level keeps the
+     * reductions of the levels before it.
+     */
+    enum Level {
+        FULL("Full", FlockingSimulation.RenderMode.VECTOR, 1, false),
+        SPRITES("Sprites", FlockingSimulation.RenderMode.SPRITE, 1, false),
+        RASTER("Raster sprites", FlockingSimulation.RenderMode.RASTER, 1, false),
+        HALF_NEIGHBORS("Half neighbors", FlockingSimulation.RenderMode.RASTER, 2, false),
+        HALF_RATE_FORCES("Half-rate forces", FlockingSimulation.RenderMode.RASTER, 2, true);
+
+        private final String label;
+        private final FlockingSimulation.RenderMode cheapestRenderer;
+        private final int neighborStride;
+        private final boolean staggeredForces;
+
+        Level(String label, FlockingSimulation.RenderMode cheapestRenderer,
+              int neighborStride, boolean staggeredForces) {
+            this.label = label;
+            this.cheapestRenderer = cheapestRenderer;
+            this.neighborStride = neighborStride;
+            this.staggeredForces = staggeredForces;
+        }
+
+        // The chosen renderer, or a cheaper one if this level requires it
+        public FlockingSimulation.RenderMode renderer(FlockingSimulation.RenderMode chosen) {
+            return chosen.ordinal() >= cheapestRenderer.ordinal() ? chosen : cheapestRenderer;
+        }
+
+        public int getNeighborStride() {
+            return neighborStride;
+        }
+
+        public boolean isStaggeredForces() {
+            return staggeredForces;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Fractions of the budget that count as over budget and as headroom
+    private static final double OVER_BUDGET = 0.9;
+    private static final double HEADROOM = 0.5;
+
+    // Consecutive frames needed before changing level
+    private static final int DEGRADE_FRAMES = 30;
+    private static final int RESTORE_FRAMES = 120;
+
+    // Weight of the newest frame in the smoothed cost
+    private static final double SMOOTHING = 0.1;
+
+    private final double budgetMillis;
+    private Level level = Level.FULL;
+    private double averageMillis;
+    private int overFrames;
+    private int underFrames;
+
+    public FrameBudgetController(double frameRate) {
+        this.budgetMillis = 1000 / frameRate;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public double getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    // Smoothed cost of a frame, the larger of painting and stepping
+    public double getFrameMillis() {
+        return averageMillis;
+    }
+
+    // Already at the cheapest level and still over budget
+    public boolean isSaturated() {
+        return level == Level.HALF_RATE_FORCES && averageMillis > budgetMillis * OVER_BUDGET;
+    }
+
+    /**
+     * Record one frame and return the level to use from now on.
+     */
+    public Level update(double paintMillis, double stepMillisPerFrame) {
+        double cost = Math.max(paintMillis, stepMillisPerFrame);
+        averageMillis += (cost - averageMillis) * SMOOTHING;
+
+        if (averageMillis > budgetMillis * OVER_BUDGET) {
+            overFrames++;
+            underFrames = 0;
+        } else if (averageMillis < budgetMillis * HEADROOM) {
+            underFrames++;
+            overFrames = 0;
+        } else {
+            overFrames = 0;
+            underFrames = 0;
+        }
+
+        Level[] levels = Level.values();
+        if (overFrames >= DEGRADE_FRAMES && level.ordinal() < levels.length - 1) {
+            level = levels[level.ordinal() + 1];
+            overFrames = 0;
+        } else if (underFrames >= RESTORE_FRAMES && level.ordinal() > 0) {
+            level = levels[level.ordinal() - 1];
+            underFrames = 0;
+        }
+        return level;
+    }
+
+    // Go back to full quality, for example when adaptation is switched off
+    public Level reset() {
+        level = Level.FULL;
+        overFrames = 0;
+        underFrames = 0;
+        return level;
+    }
+}
@@ -0,0 +1,232 @@
+package Java.Boids;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 2D k-d tree over boid positions, used to find each boid's k nearest
+ * neighbors. The tree is implicit: boid indices are arranged in one array
+ * so that the median of every range splits it on x (even depths) or y
+ * (odd depths). Subtrees above a size threshold are built in parallel on
+ * a ForkJoinPool. The split choices don't depend on which thread builds a
+ * range, so the tree is the same for any thread count.
+ */
+class KdTree {
+    // Ranges smaller than this are built on the current thread
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private int size;
+    private int[] order = new int[0];
+
+    // Coordinates in tree order, for cache-friendly queries
+    private double[] treeX = new double[0];
+    private double[] treeY = new double[0];
+
+    // Positions being sorted during a rebuild
+    private double[] px, py;
+
+    /**
+     * Bounded max-heap of the nearest boids found so far. Each thread keeps
+     * its own instance and reuses it for every query.
+     */
+    static class NearestSearch {
+        int[] index = new int[0];
+        double[] distSq = new double[0];
+        int count;
+        private int k;
+
+        void reset(int k) {
+            if (index.length < k) {
+                index = new int[k];
+                distSq = new double[k];
+            }
+            this.k = k;
+            count = 0;
+        }
+
+        // Squared distance a new candidate has to beat, once the heap is full
+        double worst() {
+            return count < k ? Double.POSITIVE_INFINITY : distSq[0];
+        }
+
+        void offer(int j, double d2) {
+            if (count < k) {
+                // Sift the new entry up
+                int c = count++;
+                while (c > 0) {
+                    int parent = (c - 1) >> 1;
+                    if (distSq[parent] >= d2) {
+                        break;
+                    }
+                    index[c] = index[parent];
+                    distSq[c] = distSq[parent];
+                    c = parent;
+                }
+                index[c] = j;
+                distSq[c] = d2;
+            } else if (d2 < distSq[0]) {
+                // Replace the farthest entry and sift it down
+                int c = 0;
+                while (true) {
+                    int child = 2 * c + 1;
+                    if (child >= count) {
+                        break;
+                    }
+                    if (child + 1 < count && distSq[child + 1] > distSq[child]) {
+                        child++;
+                    }
+                    if (distSq[child] <= d2) {
+                        break;
+                    }
+                    index[c] = index[child];
+                    distSq[c] = distSq[child];
+                    c = child;
+                }
+                index[c] = j;
+                distSq[c] = d2;
+            }
+        }
+    }
+
+    public void rebuild(double[] px, double[] py, int count, ForkJoinPool pool) {
+        if (order.length < count) {
+            int capacity = Math.max(count, order.length * 2);
+            order = new int[capacity];
+            treeX = new double[capacity];
+            treeY = new double[capacity];
+        }
+        size = count;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        this.px = px;
+        this.py = py;
+        if (count >= PARALLEL_THRESHOLD) {
+            pool.invoke(new BuildTask(0, count, 0));
+        } else {
+            build(0, count, 0);
+        }
+        this.px = null;
+        this.py = null;
+
+        for (int k = 0; k < count; k++) {
+            treeX[k] = px[order[k]];
+            treeY[k] = py[order[k]];
+        }
+    }
+
+    // Collect the k nearest boids to (x, y), skipping boid self
+    public void nearest(double x, double y, int self, int k, NearestSearch search) {
+        search.reset(k);
+        if (k > 0) {
+            search(x, y, self, 0, size, 0, search);
+        }
+    }
+
+    private void search(double x, double y, int self, int lo, int hi, int depth,
+                        NearestSearch search) {
+        if (lo >= hi) {
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        double dx = x - treeX[mid];
+        double dy = y - treeY[mid];
+        if (order[mid] != self) {
+            search.offer(order[mid], dx * dx + dy * dy);
+        }
+
+        // Visit the side containing the point first, then the other side
+        // only if the splitting line is closer than the current worst match
+        double diff = (depth & 1) == 0 ? dx : dy;
+        if (diff < 0) {
+            search(x, y, self, lo, mid, depth + 1, search);
+            if (diff * diff < search.worst()) {
+                search(x, y, self, mid + 1, hi, depth + 1, search);
+            }
+        } else {
+            search(x, y, self, mid + 1, hi, depth + 1, search);
+            if (diff * diff < search.worst()) {
+                search(x, y, self, lo, mid, depth + 1, search);
+            }
+        }
+    }
+
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select((depth & 1) == 0 ? px : py, lo, hi, mid);
+            build(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    private class BuildTask extends RecursiveAction {
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        BuildTask(int lo, int hi, int depth) {
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                build(lo, hi, depth);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            select((depth & 1) == 0 ? px : py, lo, hi, mid);
+            invokeAll(new BuildTask(lo, mid, depth + 1), new BuildTask(mid + 1, hi, depth + 1));
+        }
+    }
+
+    // Partially sort order[lo, hi) so that position k holds its median by coordinate
+    private void select(double[] coords, int lo, int hi, int k) {
+        int left = lo;
+        int right = hi - 1;
+        while (right > left) {
+            int middle = (left + right) >>> 1;
+            int pivotIndex = medianOfThree(coords, left, middle, right);
+            double pivot = coords[order[pivotIndex]];
+            swap(pivotIndex, right);
+
+            int store = left;
+            for (int i = left; i < right; i++) {
+                if (coords[order[i]] < pivot) {
+                    swap(store++, i);
+                }
+            }
+            swap(store, right);
+
+            if (store == k) {
+                return;
+            } else if (k < store) {
+                right = store - 1;
+            } else {
+                left = store + 1;
+            }
+        }
+    }
+
+    private int medianOfThree(double[] coords, int a, int b, int c) {
+        double va = coords[order[a]];
+        double vb = coords[order[b]];
+        double vc = coords[order[c]];
+        if (va < vb) {
+            return vb < vc ? b : (va < vc ? c : a);
+        }
+        return va < vc ? a : (vb < vc ? c : b);
+    }
+
+    private void swap(int a, int b) {
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
+    }
+}
@@ -0,0 +1,72 @@
+package Java.Boids;
+
+/**
+ * Distance test used by the flock step to find neighbors. Given positions
+ * in primitive arrays, it reports which entries lie strictly within a
+ * squared radius of a point, along with their squared distances, so the
+ * step uses them directly instead of measuring each neighbor again.
+ *
+ * A SIMD implementation built on jdk.incubator.vector lives in
+ * Java.Boids.simd and is compiled separately, since it needs the incubator
+ * module. vector() uses it when it is on the classpath and the module is
+ * loaded, and falls back to the scalar loop otherwise. It is not faster
+ * than the scalar kernel everywhere; FlockBenchmark times both against
+ * the inline test.
+ */
+public interface NeighborKernel {
+    String VECTOR_KERNEL_CLASS = "Java.Boids.simd.VectorNeighborKernel";
+
+    /**
+     * Store in hits every index k in [from, to) with
+     * (x - xs[k])^2 + (y - ys[k])^2 < radiusSq, in ascending order, store
+     * that squared distance in distSq[k - from], and return how many were
+     * found. hits and distSq must hold at least to - from entries; entries
+     * of distSq for indices that are not hits are left unspecified.
+     */
+    int withinRadius(double[] xs, double[] ys, int from, int to,
+                     double x, double y, double radiusSq, int[] hits, double[] distSq);
+
+    String getName();
+
+    static NeighborKernel scalar() {
+        return ScalarNeighborKernel.INSTANCE;
+    }
+
+    // The SIMD kernel if it can be loaded, otherwise the scalar one
+    static NeighborKernel vector() {
+        try {
+            return (NeighborKernel) Class.forName(VECTOR_KERNEL_CLASS)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar();
+        }
+    }
+}
+
+/**
+ * Plain loop version of the neighbor distance test
+ */
+final class ScalarNeighborKernel implements NeighborKernel {
+    static final ScalarNeighborKernel INSTANCE = new ScalarNeighborKernel();
+
+    @Override
+    public int withinRadius(double[] xs, double[] ys, int from, int to,
+                            double x, double y, double radiusSq, int[] hits, double[] distSq) {
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double d2 = dx * dx + dy * dy;
+            if (d2 < radiusSq) {
+                distSq[k - from] = d2;
+                hits[count++] = k;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
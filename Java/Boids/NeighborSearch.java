@@ -0,0 +1,24 @@
+package Java.Boids;
+
+/**
+ * How a flock finds the boids within each boid's perception radii
+ */
+enum NeighborSearch {
+    // Check every pair of boids
+    BRUTE_FORCE("Brute force"),
+    // Uniform grid rebuilt every step
+    GRID("Spatial grid"),
+    // Cached neighbor lists with a skin margin; experimental, slower than GRID so far
+    VERLET("Verlet lists (experimental)");
+
+    private final String label;
+
+    NeighborSearch(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
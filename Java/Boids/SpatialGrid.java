@@ -0,0 +1,117 @@
+package Java.Boids;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the simulation area used to find nearby boids
+ * without checking every pair. Cells are at least as large as the
+ * biggest perception radius, so every boid that can be seen from a
+ * position lies in the 3x3 block of cells around it.
+ *
+ * Boid indices are stored sorted by cell in one array (a counting sort),
+ * with cellStart[c]..cellStart[c + 1] marking the range of cell c. The
+ * grid is read-only between rebuilds, so many threads can query it.
+ */
+class SpatialGrid {
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    private final int[] cellStart;
+    private int[] items;
+    private int[] cellOf;
+
+    // Positions in the same order as items, for contiguous distance tests
+    private double[] sortedX;
+    private double[] sortedY;
+
+    public SpatialGrid(double width, double height, double cellSize) {
+        this.cellSize = cellSize;
+        cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        cellStart = new int[cols * rows + 1];
+        items = new int[64];
+        cellOf = new int[64];
+        sortedX = new double[64];
+        sortedY = new double[64];
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    // Bin the first count boids by position; indices stay ascending within a cell
+    public void rebuild(double[] px, double[] py, int count) {
+        if (count > items.length) {
+            items = new int[Math.max(count, items.length * 2)];
+            cellOf = new int[items.length];
+            sortedX = new double[items.length];
+            sortedY = new double[items.length];
+        }
+
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < count; i++) {
+            int cell = column(px[i]) + row(py[i]) * cols;
+            cellOf[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // Fill each cell from its start, using cellOf as a write cursor
+        for (int i = 0; i < count; i++) {
+            int cell = cellOf[i];
+            items[cellStart[cell]++] = i;
+        }
+        for (int c = cols * rows; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+
+        for (int k = 0; k < count; k++) {
+            sortedX[k] = px[items[k]];
+            sortedY[k] = py[items[k]];
+        }
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // Boid indices sorted by cell
+    public int[] getItems() {
+        return items;
+    }
+
+    public double[] getSortedX() {
+        return sortedX;
+    }
+
+    public double[] getSortedY() {
+        return sortedY;
+    }
+
+    public int cellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    public int cellEnd(int cell) {
+        return cellStart[cell + 1];
+    }
+
+    // Boids slightly outside the area (before wrapping) go into the edge cells
+    public int column(double x) {
+        int col = (int) Math.floor(x / cellSize);
+        return Math.max(0, Math.min(cols - 1, col));
+    }
+
+    public int row(double y) {
+        int row = (int) Math.floor(y / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+}
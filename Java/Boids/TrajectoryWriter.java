@@ -0,0 +1,122 @@
+package Java.Boids;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams flock trajectories into a compact binary file through a
+ * memory-mapped FileChannel. The file is mapped in windows of whole
+ * frames, so writing a frame is a run of float stores into the page cache
+ * and never allocates per boid.
+ *
+ * Layout (little-endian):
+ *   header, 64 bytes:
+ *     int    magic 'BOID'
+ *     int    format version (1)
+ *     int    boid count N
+ *     int    frame count (initial state plus one per step)
+ *     long   random seed
+ *     double alignment, cohesion and separation weights
+ *     16 bytes reserved
+ *   then one frame after another, each N x float32 per field, in the
+ *   order x[N], y[N], vx[N], vy[N]
+ */
+class TrajectoryWriter implements Closeable {
+    static final int MAGIC = 0x424F4944;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    // Target size of each mapped window
+    private static final long WINDOW_BYTES = 256L << 20;
+
+    private final FileChannel channel;
+    private final int count;
+    private final long frameBytes;
+    private final long framesPerWindow;
+    private final long fileBytes;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long framesInWindow;
+    private long framesWritten;
+
+    public TrajectoryWriter(Path path, int count, int frames, long seed,
+                            double alignWeight, double cohesionWeight,
+                            double separationWeight) throws IOException {
+        this.count = count;
+        this.frameBytes = 16L * count;
+        this.framesPerWindow = Math.max(1, WINDOW_BYTES / Math.max(1, frameBytes));
+        this.fileBytes = HEADER_BYTES + frameBytes * frames;
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(count);
+        header.putInt(frames);
+        header.putLong(seed);
+        header.putDouble(alignWeight);
+        header.putDouble(cohesionWeight);
+        header.putDouble(separationWeight);
+        header.force();
+
+        windowStart = HEADER_BYTES;
+    }
+
+    // Append the current positions and velocities of the first N boids
+    public void writeFrame(FlockState state) throws IOException {
+        if (HEADER_BYTES + (framesWritten + 1) * frameBytes > fileBytes) {
+            throw new IOException("More frames written than declared in the header");
+        }
+        if (window == null || framesInWindow == framesPerWindow) {
+            mapNextWindow();
+        }
+
+        int base = (int) (framesInWindow * frameBytes);
+        writeField(base, state.px);
+        writeField(base + 4 * count, state.py);
+        writeField(base + 8 * count, state.vx);
+        writeField(base + 12 * count, state.vy);
+
+        framesInWindow++;
+        framesWritten++;
+    }
+
+    private void writeField(int offset, double[] values) {
+        MappedByteBuffer buffer = window;
+        for (int i = 0; i < count; i++) {
+            buffer.putFloat(offset + 4 * i, (float) values[i]);
+        }
+    }
+
+    private void mapNextWindow() throws IOException {
+        if (window != null) {
+            windowStart += framesInWindow * frameBytes;
+        }
+        long size = Math.min(framesPerWindow * frameBytes, fileBytes - windowStart);
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        framesInWindow = 0;
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (window != null) {
+            window.force();
+            window = null;
+        }
+        channel.close();
+    }
+}
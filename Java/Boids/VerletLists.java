@@ -0,0 +1,230 @@
+package Java.Boids;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cached neighbor lists built with the perception radius plus a skin
+ * margin. Boids move at most MAX_SPEED per step, so the lists stay valid
+ * for several steps: as long as two boids have each moved at most half
+ * the skin since the last build, a pair within the perception radius is
+ * still in their lists.
+ *
+ * Boids that moved farther, including every boid that wrapped around a
+ * screen edge, are marked dirty. A dirty boid finds its neighbors through
+ * the grid instead of its list, and clean boids check the dirty boids
+ * separately, so a few wrapping boids do not force a rebuild. The lists
+ * are rebuilt once too many boids are dirty.
+ *
+ * Lists are stored in CSR form: the neighbors of boid i are
+ * neighbors[start[i]] .. neighbors[start[i + 1] - 1].
+ *
+ * Experimental: in FlockBenchmark the lists are slower than rebuilding
+ * the grid every step for every skin tried from 8 to 30. Even steps
+ * without a rebuild scan more candidates than the grid does, and a
+ * smaller skin only trades that for more rebuilds.
+ */
+class VerletLists {
+    // Boids per parallel build task
+    private static final int CHUNK_SIZE = 512;
+
+    private final double skin;
+    private final double listRadiusSq;
+    private final double maxDriftSq;
+    final SpatialGrid grid;
+
+    private int size;
+    int[] start = new int[1];
+    int[] neighbors = new int[0];
+
+    // Positions at the last build, to measure drift
+    private double[] refX = new double[0];
+    private double[] refY = new double[0];
+
+    // Boids that drifted more than half the skin since the last build
+    boolean[] dirty = new boolean[0];
+    int[] dirtyList = new int[0];
+    int dirtyCount;
+
+    // Statistics
+    private long steps;
+    private long rebuilds;
+    private long buildNanos;
+
+    // Positions being read during a build
+    private double[] px, py;
+
+    public VerletLists(double width, double height, double radius, double skin) {
+        this.skin = skin;
+        double listRadius = radius + skin;
+        listRadiusSq = listRadius * listRadius;
+        maxDriftSq = (skin / 2) * (skin / 2);
+        grid = new SpatialGrid(width, height, listRadius);
+    }
+
+    public double getSkin() {
+        return skin;
+    }
+
+    /**
+     * Make sure the lists cover the given positions. Boids that drifted
+     * more than half the skin are marked dirty and the grid is refreshed
+     * for them; the lists are rebuilt only if the boid count changed or
+     * too many boids are dirty.
+     */
+    public void update(double[] px, double[] py, int count, ForkJoinPool pool) {
+        steps++;
+        if (count == size && markDirty(px, py, count) <= maxDirty(count)) {
+            if (dirtyCount > 0) {
+                grid.rebuild(px, py, count);
+            }
+            return;
+        }
+
+        long buildStart = System.nanoTime();
+        rebuild(px, py, count, pool);
+        buildNanos += System.nanoTime() - buildStart;
+        rebuilds++;
+    }
+
+    // Dirty boids are checked against every clean boid, so keep them few
+    private static int maxDirty(int count) {
+        return Math.max(32, count / 64);
+    }
+
+    private int markDirty(double[] px, double[] py, int count) {
+        dirtyCount = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = px[i] - refX[i];
+            double dy = py[i] - refY[i];
+            dirty[i] = dx * dx + dy * dy > maxDriftSq;
+            if (dirty[i]) {
+                dirtyList[dirtyCount++] = i;
+            }
+        }
+        return dirtyCount;
+    }
+
+    private void rebuild(double[] px, double[] py, int count, ForkJoinPool pool) {
+        if (refX.length < count) {
+            int capacity = Math.max(count, refX.length * 2);
+            refX = new double[capacity];
+            refY = new double[capacity];
+            dirty = new boolean[capacity];
+            dirtyList = new int[capacity];
+        }
+        Arrays.fill(dirty, false);
+        dirtyCount = 0;
+        if (start.length < count + 1) {
+            start = new int[Math.max(count + 1, start.length * 2)];
+        }
+        System.arraycopy(px, 0, refX, 0, count);
+        System.arraycopy(py, 0, refY, 0, count);
+        size = count;
+
+        this.px = px;
+        this.py = py;
+        grid.rebuild(px, py, count);
+
+        // Count each boid's neighbors, then turn the counts into offsets
+        pool.invoke(new BuildTask(0, count, false));
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            int n = start[i + 1];
+            start[i + 1] = total + n;
+            total += n;
+        }
+        start[0] = 0;
+        if (neighbors.length < total) {
+            neighbors = new int[Math.max(total, neighbors.length * 2)];
+        }
+
+        // Fill the lists now that every boid knows where its range starts
+        pool.invoke(new BuildTask(0, count, true));
+
+        this.px = null;
+        this.py = null;
+    }
+
+    // Visit every boid within the list radius of boid i; count or store them
+    private void scan(int i, boolean fill) {
+        double x = px[i];
+        double y = py[i];
+        int out = fill ? start[i] : 0;
+
+        int col = grid.column(x);
+        int row = grid.row(y);
+        int maxCol = Math.min(grid.getCols() - 1, col + 1);
+        int maxRow = Math.min(grid.getRows() - 1, row + 1);
+        int[] items = grid.getItems();
+
+        for (int r = Math.max(0, row - 1); r <= maxRow; r++) {
+            for (int c = Math.max(0, col - 1); c <= maxCol; c++) {
+                int cell = c + r * grid.getCols();
+                for (int k = grid.cellStart(cell); k < grid.cellEnd(cell); k++) {
+                    int j = items[k];
+                    double dx = x - px[j];
+                    double dy = y - py[j];
+                    if (j != i && dx * dx + dy * dy < listRadiusSq) {
+                        if (fill) {
+                            neighbors[out] = j;
+                        }
+                        out++;
+                    }
+                }
+            }
+        }
+
+        if (!fill) {
+            start[i + 1] = out;
+        }
+    }
+
+    private class BuildTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final boolean fill;
+
+        BuildTask(int from, int to, boolean fill) {
+            this.from = from;
+            this.to = to;
+            this.fill = fill;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    scan(i, fill);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BuildTask(from, mid, fill), new BuildTask(mid, to, fill));
+        }
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    // Fraction of steps that needed a rebuild
+    public double getRebuildRate() {
+        return steps == 0 ? 0 : (double) rebuilds / steps;
+    }
+
+    public double getAverageBuildMillis() {
+        return rebuilds == 0 ? 0 : buildNanos / 1e6 / rebuilds;
+    }
+
+    public void resetStatistics() {
+        steps = 0;
+        rebuilds = 0;
+        buildNanos = 0;
+    }
+}
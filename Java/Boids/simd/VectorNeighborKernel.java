@@ -0,0 +1,64 @@
+package Java.Boids.simd;
+
+import Java.Boids.NeighborKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Neighbor distance test that checks several positions per instruction
+ * with the Vector API. It computes the same squared distances as the
+ * scalar loop, without fused multiply-adds, so both report the same hits.
+ *
+ * Build and run with the incubator module, for example:
+ *   javac --add-modules jdk.incubator.vector -cp out -d out Java/Boids/simd/*.java
+ *   java --add-modules jdk.incubator.vector -cp out Java.Boids.FlockBenchmark
+ */
+public final class VectorNeighborKernel implements NeighborKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int withinRadius(double[] xs, double[] ys, int from, int to,
+                            double x, double y, double radiusSq, int[] hits, double[] distSq) {
+        int lanes = SPECIES.length();
+        DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+        DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+
+        int count = 0;
+        int k = from;
+        for (; k + lanes <= to; k += lanes) {
+            DoubleVector dx = px.sub(DoubleVector.fromArray(SPECIES, xs, k));
+            DoubleVector dy = py.sub(DoubleVector.fromArray(SPECIES, ys, k));
+            DoubleVector d2 = dx.mul(dx).add(dy.mul(dy));
+            VectorMask<Double> inside = d2.compare(VectorOperators.LT, radiusSq);
+
+            // Every lane's distance is stored; only the hits' are read
+            d2.intoArray(distSq, k - from);
+
+            // Write out the index of every lane inside the radius
+            long bits = inside.toLong();
+            while (bits != 0) {
+                hits[count++] = k + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+
+        // Remaining positions that do not fill a whole vector
+        for (; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double d2 = dx * dx + dy * dy;
+            if (d2 < radiusSq) {
+                distSq[k - from] = d2;
+                hits[count++] = k;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
@@ -36,11 +36,13 @@ public class FlowFieldSimulation extends JFrame {
         private static final int CELL_SIZE = 20;
         private static final int NUM_PARTICLES = 1000;
         
+        // Frames over which the whole flow field is refreshed, a slice of rows at a time
+        private static final int FRAMES_PER_REFRESH = 60;
+        
         private FlowField flowField;
         private ArrayList<Particle> particles;
         private Timer timer;
         private Random random;
-        private int frameCount;
         
         public FlowFieldPanel() {
             setPreferredSize(new Dimension(WIDTH, HEIGHT));
@@ -70,7 +72,6 @@ public class FlowFieldSimulation extends JFrame {
             // Animation timer
             timer = new Timer(16, this); // ~60 FPS
             timer.start();
-            frameCount = 0;
         }
         
         @Override
@@ -95,12 +96,9 @@ public class FlowFieldSimulation extends JFrame {
         
         @Override
         public void actionPerformed(ActionEvent e) {
-            frameCount++;
-            
-            // Update flow field occasionally
-            if (frameCount % 60 == 0) {
-                flowField.update();
-            }
+            // Refresh a slice of the flow field every frame, so the cost is
+            // spread evenly instead of recomputing it all every 60 frames
+            flowField.updateRows(FRAMES_PER_REFRESH);
             
             // Update particles
             for (Particle particle : particles) {
@@ -126,6 +124,11 @@ class Vector2D {
         this.y = y;
     }
     
+    public void set(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+    
     public void add(Vector2D v) {
         x += v.x;
         y += v.y;
@@ -159,10 +162,6 @@ class Vector2D {
         return Math.atan2(y, x);
     }
     
-    public static Vector2D fromAngle(double angle) {
-        return new Vector2D(Math.cos(angle), Math.sin(angle));
-    }
-    
     public Vector2D copy() {
         return new Vector2D(x, y);
     }
@@ -170,8 +169,17 @@ class Vector2D {
 
 /**
  * Flow Field class to manage the vector field
+ *
+ * Angles come from 3D Perlin noise sampled at (0.1 * column, 0.1 * row,
+ * zoff), with zoff advancing over time. update() recomputes the whole
+ * field at once; updateRows() recomputes a slice of rows per call, so the
+ * same work is spread over several frames.
  */
 class FlowField {
+    // Noise coordinates per cell, and z advanced per full refresh
+    private static final double NOISE_STEP = 0.1;
+    private static final double Z_STEP = 0.01;
+    
     private final int cellSize;
     private final int cols;
     private final int rows;
@@ -180,6 +188,10 @@ class FlowField {
     private final int width;
     private final int height;
     private final Random random;
+    private final PerlinNoise noise;
+    
+    // Row the next incremental slice starts at
+    private int nextRow;
     
     public FlowField(int cellSize, int width, int height) {
         this.cellSize = cellSize;
@@ -188,30 +200,44 @@ class FlowField {
         cols = width / cellSize;
         rows = height / cellSize;
         field = new Vector2D[cols * rows];
+        for (int i = 0; i < field.length; i++) {
+            field[i] = new Vector2D(1, 0);
+        }
         zoff = 0;
         random = new Random();
+        noise = new PerlinNoise(random);
     }
     
     public void update() {
-        double xoff = 0;
-        for (int i = 0; i < cols; i++) {
-            double yoff = 0;
-            for (int j = 0; j < rows; j++) {
-                // Calculate flow angle using Perlin-like noise
-                double angle = noise(xoff, yoff, zoff) * Math.PI * 4;
-                
-                // Create a vector from the angle
-                Vector2D v = Vector2D.fromAngle(angle);
-                
-                // Store vector in the field array
-                int index = i + j * cols;
-                field[index] = v;
-                
-                yoff += 0.1;
+        computeRows(0, rows);
+        zoff += Z_STEP; // Increment z-offset for flow evolution
+    }
+    
+    /**
+     * Recompute the next rows / framesPerRefresh rows (rounded up), so that
+     * framesPerRefresh calls refresh the whole field. z advances a little
+     * with each slice, so neighboring slices differ as little as
+     * successive frames do and no seam shows where the sweep is.
+     */
+    public void updateRows(int framesPerRefresh) {
+        int count = (rows + framesPerRefresh - 1) / framesPerRefresh;
+        int end = Math.min(rows, nextRow + count);
+        computeRows(nextRow, end);
+        nextRow = end == rows ? 0 : end;
+        zoff += Z_STEP / framesPerRefresh;
+    }
+    
+    // Set the vectors of rows [fromRow, toRow) in place from the noise at the current z
+    private void computeRows(int fromRow, int toRow) {
+        for (int j = fromRow; j < toRow; j++) {
+            double yoff = j * NOISE_STEP;
+            for (int i = 0; i < cols; i++) {
+                // Noise is in about -1 .. 1; map it to 0 .. 1 and then to an angle
+                double value = (noise.noise(i * NOISE_STEP, yoff, zoff) + 1) * 0.5;
+                double angle = value * Math.PI * 4;
+                field[i + j * cols].set(Math.cos(angle), Math.sin(angle));
             }
-            xoff += 0.1;
         }
-        zoff += 0.01; // Increment z-offset for flow evolution
     }
     
     public void addDisturbance(int x, int y) {
@@ -225,11 +251,10 @@ class FlowField {
                 if (i >= 0 && i < cols && j >= 0 && j < rows) {
                     // Calculate vector pointing away from disturbance center
                     double angle = Math.atan2(j - centerY, i - centerX);
-                    Vector2D v = Vector2D.fromAngle(angle);
-                    v.mult(3); // Stronger force for disturbance
                     
+                    // Stronger force for disturbance, until the noise overwrites it
                     int index = i + j * cols;
-                    field[index] = v;
+                    field[index].set(Math.cos(angle) * 3, Math.sin(angle) * 3);
                 }
             }
         }
@@ -266,14 +291,6 @@ class FlowField {
         }
     }
     
-    // Simple implementation of noise function (not true Perlin noise)
-    private double noise(double x, double y, double z) {
-        // Simple hash function to simulate noise
-        double value = Math.sin(x * 10 + y * 20 + z * 15) * 0.5 + 0.5;
-        value = Math.sin(value * 10) * 0.5 + 0.5;
-        return value;
-    }
-    
     private double constrain(double value, double min, double max) {
         if (value < min) return min;
         if (value > max) return max;
@@ -281,6 +298,79 @@ class FlowField {
     }
 }
 
+/**
+ * Ken Perlin's improved gradient noise (2002). Each lattice point gets one
+ * of twelve edge gradients through a shuffled permutation table, and the
+ * contributions of the eight corners around a point are blended with a
+ * quintic fade, so the noise and its first two derivatives are continuous.
+ * Nothing is allocated per call.
+ */
+class PerlinNoise {
+    // A permutation of 0 .. 255, stored twice so lookups never wrap
+    private final int[] perm = new int[512];
+    
+    public PerlinNoise(Random random) {
+        for (int i = 0; i < 256; i++) {
+            perm[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = perm[i];
+            perm[i] = perm[j];
+            perm[j] = swap;
+        }
+        System.arraycopy(perm, 0, perm, 256, 256);
+    }
+    
+    // Noise at (x, y, z), in about -1 .. 1 and 0 at lattice points; repeats every 256 units
+    public double noise(double x, double y, double z) {
+        double floorX = Math.floor(x);
+        double floorY = Math.floor(y);
+        double floorZ = Math.floor(z);
+        int cellX = (int) floorX & 255;
+        int cellY = (int) floorY & 255;
+        int cellZ = (int) floorZ & 255;
+        x -= floorX;
+        y -= floorY;
+        z -= floorZ;
+        
+        double u = fade(x);
+        double v = fade(y);
+        double w = fade(z);
+        
+        // Hashes of the eight corners of the cell
+        int a = perm[cellX] + cellY;
+        int aa = perm[a] + cellZ;
+        int ab = perm[a + 1] + cellZ;
+        int b = perm[cellX + 1] + cellY;
+        int ba = perm[b] + cellZ;
+        int bb = perm[b + 1] + cellZ;
+        
+        return lerp(w,
+                lerp(v, lerp(u, grad(perm[aa], x, y, z), grad(perm[ba], x - 1, y, z)),
+                        lerp(u, grad(perm[ab], x, y - 1, z), grad(perm[bb], x - 1, y - 1, z))),
+                lerp(v, lerp(u, grad(perm[aa + 1], x, y, z - 1), grad(perm[ba + 1], x - 1, y, z - 1)),
+                        lerp(u, grad(perm[ab + 1], x, y - 1, z - 1), grad(perm[bb + 1], x - 1, y - 1, z - 1))));
+    }
+    
+    // 6t^5 - 15t^4 + 10t^3
+    private static double fade(double t) {
+        return t * t * t * (t * (t * 6 - 15) + 10);
+    }
+    
+    private static double lerp(double t, double a, double b) {
+        return a + t * (b - a);
+    }
+    
+    // Dot product of (x, y, z) with the gradient picked by the low four bits of the hash
+    private static double grad(int hash, double x, double y, double z) {
+        int h = hash & 15;
+        double u = h < 8 ? x : y;
+        double v = h < 4 ? y : h == 12 || h == 14 ? x : z;
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+}
+
 /**
  * Particle class for elements that follow the flow field
  */
@@ -0,0 +1,183 @@
+package Java.ReactionDiffusion;
+
+import java.util.Arrays;
+
+/**
+ * The original layout: one double[width][height] array of columns per
+ * field. Border cells need bounds checks, since there is no padding.
+ * Kept as the reference the flat layouts are compared against.
+ */
+class ArrayGrid extends ReactionDiffusionGrid {
+    private double[][] gridA;
+    private double[][] gridB;
+    private double[][] nextA;
+    private double[][] nextB;
+
+    public ArrayGrid(int width, int height) {
+        super(width, height);
+        gridA = new double[width][height];
+        gridB = new double[width][height];
+        nextA = new double[width][height];
+        nextB = new double[width][height];
+    }
+
+    @Override
+    public double getA(int x, int y) {
+        return gridA[x][y];
+    }
+
+    @Override
+    public double getB(int x, int y) {
+        return gridB[x][y];
+    }
+
+    @Override
+    public void set(int x, int y, double a, double b) {
+        gridA[x][y] = a;
+        gridB[x][y] = b;
+    }
+
+    @Override
+    public void fill(double a, double b) {
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                gridA[i][j] = a;
+                gridB[i][j] = b;
+                nextA[i][j] = a;
+                nextB[i][j] = b;
+            }
+        }
+    }
+
+    @Override
+    public void updateTile(int startX, int startY, int endX, int endY,
+                           double dA, double dB, double feed, double kill) {
+        for (int i = startX; i < endX; i++) {
+            boolean edgeColumn = i == 0 || i == width - 1;
+            for (int j = startY; j < endY; j++) {
+                if (edgeColumn || j == 0 || j == height - 1) {
+                    updateEdgeCell(i, j, dA, dB, feed, kill);
+                    continue;
+                }
+
+                // Get current values
+                double a = gridA[i][j];
+                double b = gridB[i][j];
+
+                // Calculate the Laplacian for diffusion
+                double laplaceA = 0;
+                double laplaceB = 0;
+
+                // 3x3 kernel
+                laplaceA += gridA[i-1][j] * EDGE_WEIGHT;
+                laplaceA += gridA[i+1][j] * EDGE_WEIGHT;
+                laplaceA += gridA[i][j-1] * EDGE_WEIGHT;
+                laplaceA += gridA[i][j+1] * EDGE_WEIGHT;
+                laplaceA += gridA[i-1][j-1] * CORNER_WEIGHT;
+                laplaceA += gridA[i+1][j-1] * CORNER_WEIGHT;
+                laplaceA += gridA[i-1][j+1] * CORNER_WEIGHT;
+                laplaceA += gridA[i+1][j+1] * CORNER_WEIGHT;
+                laplaceA -= gridA[i][j] * 1.0;
+
+                laplaceB += gridB[i-1][j] * EDGE_WEIGHT;
+                laplaceB += gridB[i+1][j] * EDGE_WEIGHT;
+                laplaceB += gridB[i][j-1] * EDGE_WEIGHT;
+                laplaceB += gridB[i][j+1] * EDGE_WEIGHT;
+                laplaceB += gridB[i-1][j-1] * CORNER_WEIGHT;
+                laplaceB += gridB[i+1][j-1] * CORNER_WEIGHT;
+                laplaceB += gridB[i-1][j+1] * CORNER_WEIGHT;
+                laplaceB += gridB[i+1][j+1] * CORNER_WEIGHT;
+                laplaceB -= gridB[i][j] * 1.0;
+
+                react(i, j, a, b, laplaceA, laplaceB, dA, dB, feed, kill);
+            }
+        }
+    }
+
+    // Border cells see the steady state (A=1, B=0) outside the grid
+    private void updateEdgeCell(int i, int j, double dA, double dB, double feed, double kill) {
+        double laplaceA = 0;
+        double laplaceB = 0;
+
+        laplaceA += valueA(i-1, j) * EDGE_WEIGHT;
+        laplaceA += valueA(i+1, j) * EDGE_WEIGHT;
+        laplaceA += valueA(i, j-1) * EDGE_WEIGHT;
+        laplaceA += valueA(i, j+1) * EDGE_WEIGHT;
+        laplaceA += valueA(i-1, j-1) * CORNER_WEIGHT;
+        laplaceA += valueA(i+1, j-1) * CORNER_WEIGHT;
+        laplaceA += valueA(i-1, j+1) * CORNER_WEIGHT;
+        laplaceA += valueA(i+1, j+1) * CORNER_WEIGHT;
+        laplaceA -= gridA[i][j] * 1.0;
+
+        laplaceB += valueB(i-1, j) * EDGE_WEIGHT;
+        laplaceB += valueB(i+1, j) * EDGE_WEIGHT;
+        laplaceB += valueB(i, j-1) * EDGE_WEIGHT;
+        laplaceB += valueB(i, j+1) * EDGE_WEIGHT;
+        laplaceB += valueB(i-1, j-1) * CORNER_WEIGHT;
+        laplaceB += valueB(i+1, j-1) * CORNER_WEIGHT;
+        laplaceB += valueB(i-1, j+1) * CORNER_WEIGHT;
+        laplaceB += valueB(i+1, j+1) * CORNER_WEIGHT;
+        laplaceB -= gridB[i][j] * 1.0;
+
+        react(i, j, gridA[i][j], gridB[i][j], laplaceA, laplaceB, dA, dB, feed, kill);
+    }
+
+    private double valueA(int i, int j) {
+        return i < 0 || j < 0 || i >= width || j >= height ? boundaryA : gridA[i][j];
+    }
+
+    private double valueB(int i, int j) {
+        return i < 0 || j < 0 || i >= width || j >= height ? boundaryB : gridB[i][j];
+    }
+
+    private void react(int i, int j, double a, double b, double laplaceA, double laplaceB,
+                       double dA, double dB, double feed, double kill) {
+        // Gray-Scott reaction-diffusion formula
+        double reaction = a * b * b;
+
+        // Update rules
+        nextA[i][j] = a + (dA * laplaceA - reaction + feed * (1 - a)) * STEP_FACTOR;
+        nextB[i][j] = b + (dB * laplaceB + reaction - (kill + feed) * b) * STEP_FACTOR;
+
+        // Constrain values for stability
+        nextA[i][j] = Math.max(0, Math.min(1, nextA[i][j]));
+        nextB[i][j] = Math.max(0, Math.min(1, nextB[i][j]));
+    }
+
+    @Override
+    public boolean nextTileNearSteady(int startX, int startY, int endX, int endY, double epsilon) {
+        for (int i = startX; i < endX; i++) {
+            for (int j = startY; j < endY; j++) {
+                if (Math.abs(nextA[i][j] - boundaryA) > epsilon || Math.abs(nextB[i][j] - boundaryB) > epsilon) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void fillNextTile(int startX, int startY, int endX, int endY, double a, double b) {
+        for (int i = startX; i < endX; i++) {
+            Arrays.fill(nextA[i], startY, endY, a);
+            Arrays.fill(nextB[i], startY, endY, b);
+        }
+    }
+
+    @Override
+    public void swap() {
+        double[][] tempA = gridA;
+        gridA = nextA;
+        nextA = tempA;
+
+        double[][] tempB = gridB;
+        gridB = nextB;
+        nextB = tempB;
+    }
+
+    @Override
+    public long getBytes() {
+        // Four fields, each an array of column arrays with 16-byte headers
+        return 4L * width * (height * 8L + 16);
+    }
+}
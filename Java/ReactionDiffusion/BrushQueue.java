@@ -0,0 +1,88 @@
+package Java.ReactionDiffusion;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brush strokes from the Swing thread, waiting to be painted into the
+ * grid by the solver thread between steps. Each press or drag becomes one
+ * line segment, stored as two longs (each end's x and y as 32-bit halves)
+ * in a fixed ring buffer, so input never allocates, locks or blocks
+ * either thread.
+ *
+ * There is one producer (the Swing thread, through press and drag) and
+ * one consumer (the solver thread, through drain). The producer publishes
+ * a slot by advancing tail and the consumer frees slots by advancing
+ * head; each side only writes its own counter. When the ring is full a
+ * drag is dropped, and the next one that fits joins on from the last
+ * point queued, so a stroke loses detail but never breaks.
+ */
+final class BrushQueue {
+    private static final int CAPACITY = 1 << 12;
+    private static final int MASK = CAPACITY - 1;
+
+    // Start and end point of each segment, two entries per slot
+    private final long[] segments = new long[2 * CAPACITY];
+
+    // Segments taken and queued so far
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // End of the last queued segment; producer only
+    private int lastX;
+    private int lastY;
+
+    // Start a stroke with a single stamp
+    public void press(int x, int y) {
+        lastX = x;
+        lastY = y;
+        offer(x, y, x, y);
+    }
+
+    // Continue the stroke to (x, y)
+    public void drag(int x, int y) {
+        if (offer(lastX, lastY, x, y)) {
+            lastX = x;
+            lastY = y;
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Paint every queued segment into the system, oldest first, and
+     * return how many there were. Call on the solver thread between steps.
+     */
+    public int drain(ReactionDiffusionSystem system) {
+        long from = head.get();
+        long to = tail.get();
+        for (long i = from; i < to; i++) {
+            int slot = 2 * ((int) i & MASK);
+            long start = segments[slot];
+            long end = segments[slot + 1];
+            system.addChemicalLine((int) (start >> 32), (int) start, (int) (end >> 32), (int) end);
+        }
+        // Releases the slots only after they have been read
+        head.lazySet(to);
+        return (int) (to - from);
+    }
+
+    private boolean offer(int x0, int y0, int x1, int y1) {
+        long t = tail.get();
+        if (t - head.get() == CAPACITY) {
+            return false;
+        }
+        int slot = 2 * ((int) t & MASK);
+        segments[slot] = point(x0, y0);
+        segments[slot + 1] = point(x1, y1);
+        // Publishes the slot written above
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // A point as one long, x in the high half; points dragged off the panel may be negative
+    private static long point(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
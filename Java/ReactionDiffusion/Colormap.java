@@ -0,0 +1,58 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Palettes for displaying the concentration of chemical B. Each palette
+ * is precomputed into a table of TABLE_SIZE RGB colors, so converting a
+ * cell is one multiply and one array lookup.
+ */
+enum Colormap {
+    // Today's look: white where there is no B, black where B is 1
+    GRAYSCALE("Grayscale", 0xFFFFFF, 0x000000),
+    INFERNO("Inferno", 0x000004, 0x420A68, 0x932667, 0xDD513A, 0xFCA50A, 0xFCFFA4),
+    OCEAN("Ocean", 0x03045E, 0x0077B6, 0x00B4D8, 0x90E0EF, 0xFFFFFF),
+    HEAT("Heat", 0x000000, 0x800000, 0xFF4000, 0xFFC000, 0xFFFFFF);
+
+    static final int TABLE_SIZE = 4096;
+
+    private final String label;
+    private final int[] table;
+
+    /**
+     * Colors are evenly spaced stops from B=0 to B=1, linearly
+     * interpolated in between.
+     */
+    Colormap(String label, int... stops) {
+        this.label = label;
+        table = new int[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = interpolate(stops, i / (double) (TABLE_SIZE - 1));
+        }
+    }
+
+    private static int interpolate(int[] stops, double b) {
+        double position = b * (stops.length - 1);
+        int low = Math.min(stops.length - 2, (int) position);
+        double t = position - low;
+        int from = stops[low];
+        int to = stops[low + 1];
+        int r = (int) Math.round(((from >> 16) & 0xFF) * (1 - t) + ((to >> 16) & 0xFF) * t);
+        int g = (int) Math.round(((from >> 8) & 0xFF) * (1 - t) + ((to >> 8) & 0xFF) * t);
+        int bl = (int) Math.round((from & 0xFF) * (1 - t) + (to & 0xFF) * t);
+        return (r << 16) | (g << 8) | bl;
+    }
+
+    // RGB colors for B = 0 .. 1 in TABLE_SIZE steps
+    public int[] getTable() {
+        return table;
+    }
+
+    // Table position for a concentration, clamped to [0, 1] for models whose B leaves it
+    static int index(double b) {
+        return Math.max(0, Math.min(TABLE_SIZE - 1, (int) (b * (TABLE_SIZE - 1) + 0.5)));
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,364 @@
+package Java.ReactionDiffusion;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one reaction-diffusion field across several JVMs on the same
+ * machine, so that more than one socket's memory bandwidth can be used.
+ * The grid is split into horizontal slabs of rows, one per process. Each
+ * process steps its slab with the ordinary ReactionDiffusionSystem, which
+ * holds one extra ghost row above and below the slab for the rows of the
+ * neighboring slabs. Before every step the processes swap their edge rows
+ * with their neighbors over loopback sockets, so every cell sees exactly
+ * the neighbors it would in one large grid and the stitched result is
+ * identical to the single-process one.
+ *
+ * Quiet tiles are not skipped on either side: which cells are snapped to
+ * the steady state depends on where the tiles fall, which differs between
+ * a slab and the whole grid.
+ *
+ * Usage:
+ *   java Java.ReactionDiffusion.DistributedReactionDiffusion launch [processes] [width] [height] [steps]
+ * starts the worker processes, stitches their slabs and compares them with
+ * a single-process run, failing if they differ at all. Workers are
+ * started by the launcher with
+ *   java Java.ReactionDiffusion.DistributedReactionDiffusion worker index processes width height steps ports dir
+ */
+public class DistributedReactionDiffusion {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("worker")) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]), Integer.parseInt(args[5]), parsePorts(args[6]), Paths.get(args[7]));
+        } else if (args.length > 0 && args[0].equals("launch")) {
+            int processes = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            int width = args.length > 2 ? Integer.parseInt(args[2]) : 800;
+            int height = args.length > 3 ? Integer.parseInt(args[3]) : 600;
+            int steps = args.length > 4 ? Integer.parseInt(args[4]) : 500;
+            launch(processes, width, height, steps);
+        } else {
+            System.err.println("Usage: DistributedReactionDiffusion launch [processes] [width] [height] [steps]");
+            System.exit(1);
+        }
+    }
+
+    // First row of slab index out of processes
+    static int slabStart(int index, int processes, int height) {
+        return (int) ((long) index * height / processes);
+    }
+
+    /**
+     * The starting state of the whole field, painted into a system whose
+     * row 0 is row offsetY of the field. Cells outside the system are
+     * clipped, so every slab gets exactly its share.
+     */
+    static void seed(ReactionDiffusionSystem system, int width, int height, int offsetY) {
+        system.clear();
+        system.addChemicalSquare(width / 2, height / 2 - offsetY, 20);
+        system.addChemical(width / 4, height / 4 - offsetY);
+        system.addChemical(3 * width / 4, height / 3 - offsetY);
+        system.addChemical(width / 3, 3 * height / 4 - offsetY);
+    }
+
+    private static void launch(int processes, int width, int height, int steps) throws Exception {
+        if (processes < 1 || processes > height) {
+            throw new IllegalArgumentException("Need between 1 and " + height + " processes: " + processes);
+        }
+        Path dir = Files.createTempDirectory("reaction-diffusion-slabs");
+        int[] ports = freePorts(processes);
+        StringBuilder portList = new StringBuilder();
+        for (int port : ports) {
+            portList.append(portList.length() == 0 ? "" : ",").append(port);
+        }
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < processes; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DistributedReactionDiffusion.class.getName(), "worker", String.valueOf(i),
+                    String.valueOf(processes), String.valueOf(width), String.valueOf(height),
+                    String.valueOf(steps), portList.toString(), dir.toString());
+            builder.inheritIO();
+            workers.add(builder.start());
+        }
+        for (int i = 0; i < processes; i++) {
+            int status = workers.get(i).waitFor();
+            if (status != 0) {
+                throw new IllegalStateException("Worker " + i + " exited with status " + status);
+            }
+        }
+        double distributedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // The same field in one process, all cores, every tile stepped
+        ReactionDiffusionSystem single = new ReactionDiffusionSystem(width, height,
+                Runtime.getRuntime().availableProcessors(), GridStorage.FLAT_DOUBLE);
+        single.setSkipQuietTiles(false);
+        seed(single, width, height, 0);
+        start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            single.update();
+        }
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+
+        double max = 0;
+        for (int i = 0; i < processes; i++) {
+            max = Math.max(max, compareSlab(single, dir.resolve(slabFile(i)),
+                    slabStart(i, processes, height), slabStart(i + 1, processes, height)));
+            Files.deleteIfExists(dir.resolve(slabFile(i)));
+        }
+        Files.deleteIfExists(dir);
+
+        System.out.printf("%d processes, %dx%d, %d steps: %.2f s including JVM start-up; "
+                + "1 process: %.2f s; stitched vs single process: max difference %.3e%n",
+                processes, width, height, steps, distributedSeconds, singleSeconds, max);
+        if (max != 0) {
+            throw new IllegalStateException("Stitched slabs differ from the single-process run by up to " + max);
+        }
+    }
+
+    private static void runWorker(int index, int processes, int width, int height, int steps,
+                                  int[] ports, Path dir) throws IOException, InterruptedException {
+        int startY = slabStart(index, processes, height);
+        int endY = slabStart(index + 1, processes, height);
+        boolean hasUpper = index > 0;
+        boolean hasLower = index < processes - 1;
+
+        // Slab rows plus a ghost row for each neighbor
+        int ghostTop = hasUpper ? 1 : 0;
+        int localHeight = endY - startY + ghostTop + (hasLower ? 1 : 0);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / processes);
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(width, localHeight, threads, GridStorage.FLAT_DOUBLE);
+        system.setSkipQuietTiles(false);
+        seed(system, width, height, startY - ghostTop);
+
+        // Each process accepts its lower neighbor and connects to its upper one
+        Neighbor upper = null;
+        Neighbor lower = null;
+        try (ServerSocketChannel server = hasLower ? ServerSocketChannel.open() : null) {
+            if (server != null) {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), ports[index]));
+            }
+            if (hasUpper) {
+                upper = new Neighbor(connect(ports[index - 1]), width);
+            }
+            if (server != null) {
+                lower = new Neighbor(server.accept(), width);
+            }
+        }
+
+        long start = System.nanoTime();
+        int firstRow = ghostTop;
+        int lastRow = localHeight - 1 - (hasLower ? 1 : 0);
+        for (int s = 0; s < steps; s++) {
+            // Send the edge rows of the slab, then fill the ghost rows
+            Future<?> sentUp = upper == null ? null : upper.send(system, firstRow);
+            Future<?> sentDown = lower == null ? null : lower.send(system, lastRow);
+            if (upper != null) {
+                upper.receive(system, 0);
+            }
+            if (lower != null) {
+                lower.receive(system, localHeight - 1);
+            }
+            Neighbor.await(sentUp);
+            Neighbor.await(sentDown);
+
+            system.update();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        writeSlab(system, dir.resolve(slabFile(index)), firstRow, lastRow + 1);
+        if (upper != null) {
+            upper.close();
+        }
+        if (lower != null) {
+            lower.close();
+        }
+        system.shutdown();
+        // One write, so the lines of several workers do not interleave
+        System.out.print(String.format("worker %d: rows %d-%d, %d threads, %.1f steps/s%n",
+                index, startY, endY - 1, threads, steps / seconds));
+    }
+
+    // Connect to a neighbor's port, waiting for it to start listening
+    private static SocketChannel connect(int port) throws IOException, InterruptedException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return SocketChannel.open(address);
+            } catch (IOException e) {
+                if (attempt == 600) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * The connection to one neighboring slab. Rows are sent on a separate
+     * thread while the other side's row is read, so two neighbors sending
+     * at once cannot block each other on full socket buffers.
+     */
+    private static class Neighbor {
+        private final SocketChannel channel;
+        private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "halo-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final double[] sendA;
+        private final double[] sendB;
+        private final double[] receiveA;
+        private final double[] receiveB;
+        private final ByteBuffer sendBuffer;
+        private final ByteBuffer receiveBuffer;
+
+        Neighbor(SocketChannel channel, int width) throws IOException {
+            this.channel = channel;
+            channel.socket().setTcpNoDelay(true);
+            sendA = new double[width];
+            sendB = new double[width];
+            receiveA = new double[width];
+            receiveB = new double[width];
+            sendBuffer = ByteBuffer.allocateDirect(16 * width).order(ByteOrder.nativeOrder());
+            receiveBuffer = ByteBuffer.allocateDirect(16 * width).order(ByteOrder.nativeOrder());
+        }
+
+        // Row y of the system, read now and written in the background
+        Future<?> send(ReactionDiffusionSystem system, int y) {
+            system.getRow(y, sendA, sendB);
+            sendBuffer.clear();
+            sendBuffer.asDoubleBuffer().put(sendA).put(sendB);
+            return sender.submit(() -> {
+                try {
+                    while (sendBuffer.hasRemaining()) {
+                        channel.write(sendBuffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        // The neighbor's row, stored as row y of the system
+        void receive(ReactionDiffusionSystem system, int y) throws IOException {
+            receiveBuffer.clear();
+            while (receiveBuffer.hasRemaining()) {
+                if (channel.read(receiveBuffer) < 0) {
+                    throw new IOException("Neighbor closed the connection");
+                }
+            }
+            receiveBuffer.flip();
+            receiveBuffer.asDoubleBuffer().get(receiveA).get(receiveB);
+            system.setRow(y, receiveA, receiveB);
+        }
+
+        static void await(Future<?> sent) throws IOException, InterruptedException {
+            if (sent == null) {
+                return;
+            }
+            try {
+                sent.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Sending a halo row failed", e.getCause());
+            }
+        }
+
+        void close() throws IOException {
+            sender.shutdown();
+            channel.close();
+        }
+    }
+
+    private static String slabFile(int index) {
+        return "slab-" + index + ".bin";
+    }
+
+    // Rows [fromRow, toRow) of the system as raw doubles, A then B per row
+    private static void writeSlab(ReactionDiffusionSystem system, Path file, int fromRow, int toRow) throws IOException {
+        int width = system.getWidth();
+        double[] a = new double[width];
+        double[] b = new double[width];
+        ByteBuffer row = ByteBuffer.allocate(16 * width).order(ByteOrder.nativeOrder());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int y = fromRow; y < toRow; y++) {
+                system.getRow(y, a, b);
+                row.clear();
+                row.asDoubleBuffer().put(a).put(b);
+                while (row.hasRemaining()) {
+                    channel.write(row);
+                }
+            }
+        }
+    }
+
+    // Largest difference between a slab file and rows [startY, endY) of the system
+    private static double compareSlab(ReactionDiffusionSystem system, Path file, int startY, int endY) throws IOException {
+        int width = system.getWidth();
+        double[] a = new double[width];
+        double[] b = new double[width];
+        double max = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            ByteBuffer row = ByteBuffer.allocate(16 * width).order(ByteOrder.nativeOrder());
+            for (int y = startY; y < endY; y++) {
+                in.readFully(row.array());
+                row.clear();
+                system.getRow(y, a, b);
+                for (int x = 0; x < width; x++) {
+                    max = Math.max(max, Math.abs(row.getDouble(8 * x) - a[x]));
+                    max = Math.max(max, Math.abs(row.getDouble(8 * (width + x)) - b[x]));
+                }
+            }
+        }
+        return max;
+    }
+
+    // Ports nothing is listening on right now, one per process
+    private static int[] freePorts(int count) throws IOException {
+        int[] ports = new int[count];
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                sockets.add(socket);
+                ports[i] = socket.getLocalPort();
+            }
+        } finally {
+            for (ServerSocket socket : sockets) {
+                socket.close();
+            }
+        }
+        return ports;
+    }
+
+    private static int[] parsePorts(String list) {
+        String[] parts = list.split(",");
+        int[] ports = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ports[i] = Integer.parseInt(parts[i]);
+        }
+        return ports;
+    }
+}
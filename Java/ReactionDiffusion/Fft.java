@@ -0,0 +1,176 @@
+package Java.ReactionDiffusion;
+
+import java.util.Arrays;
+
+/**
+ * In-place complex discrete Fourier transform of a fixed length. Powers
+ * of two use an iterative radix-2 transform with precomputed twiddle
+ * factors; other lengths (such as the 800 x 600 window) use Bluestein's
+ * algorithm, which turns the transform into a convolution done with a
+ * power-of-two transform of at least twice the length.
+ *
+ * An instance may be used by several threads at once; the scratch space
+ * for Bluestein's algorithm is per thread. The inverse is not scaled.
+ */
+final class Fft {
+    private final int n;
+
+    // Radix-2: cos and sin of 2 pi i / n for i < n / 2, and the bit reversal
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    // Bluestein: chirp exp(-i pi k^2 / n), and the transformed filter
+    private final Fft inner;
+    private final double[] chirpRe;
+    private final double[] chirpIm;
+    private final double[] filterRe;
+    private final double[] filterIm;
+    private final ThreadLocal<double[][]> scratch;
+
+    public Fft(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Transform length must be positive: " + n);
+        }
+        this.n = n;
+
+        if (Integer.bitCount(n) == 1) {
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int i = 0; i < n / 2; i++) {
+                cos[i] = Math.cos(2 * Math.PI * i / n);
+                sin[i] = Math.sin(2 * Math.PI * i / n);
+            }
+            int bits = Integer.numberOfTrailingZeros(n);
+            reversed = new int[n];
+            for (int i = 0; i < n; i++) {
+                reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            inner = null;
+            chirpRe = chirpIm = filterRe = filterIm = null;
+            scratch = null;
+            return;
+        }
+
+        cos = sin = null;
+        reversed = null;
+        int m = Integer.highestOneBit(2 * n - 1) << 1;
+        inner = new Fft(m);
+
+        // k^2 mod 2n keeps the chirp angle exact for large k
+        chirpRe = new double[n];
+        chirpIm = new double[n];
+        for (int k = 0; k < n; k++) {
+            double angle = Math.PI * (((long) k * k) % (2L * n)) / n;
+            chirpRe[k] = Math.cos(angle);
+            chirpIm[k] = -Math.sin(angle);
+        }
+
+        filterRe = new double[m];
+        filterIm = new double[m];
+        filterRe[0] = chirpRe[0];
+        filterIm[0] = -chirpIm[0];
+        for (int k = 1; k < n; k++) {
+            filterRe[k] = filterRe[m - k] = chirpRe[k];
+            filterIm[k] = filterIm[m - k] = -chirpIm[k];
+        }
+        inner.transform(filterRe, filterIm, 0, false);
+        scratch = ThreadLocal.withInitial(() -> new double[2][m]);
+    }
+
+    public int length() {
+        return n;
+    }
+
+    // Transform re[offset .. offset + n) and im[offset .. offset + n) in place
+    public void transform(double[] re, double[] im, int offset, boolean inverse) {
+        // The inverse is the conjugate of the forward transform of the conjugate
+        if (inverse) {
+            conjugate(im, offset);
+        }
+        if (inner == null) {
+            radix2(re, im, offset);
+        } else {
+            bluestein(re, im, offset);
+        }
+        if (inverse) {
+            conjugate(im, offset);
+        }
+    }
+
+    private void conjugate(double[] im, int offset) {
+        for (int i = offset; i < offset + n; i++) {
+            im[i] = -im[i];
+        }
+    }
+
+    private void radix2(double[] re, double[] im, int offset) {
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (i < j) {
+                double t = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = t;
+                t = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = t;
+            }
+        }
+
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int start = offset; start < offset + n; start += size) {
+                for (int j = 0; j < half; j++) {
+                    // exp(-2 pi i j / size)
+                    double wr = cos[j * step];
+                    double wi = -sin[j * step];
+                    int p = start + j;
+                    int q = p + half;
+                    double tr = re[q] * wr - im[q] * wi;
+                    double ti = re[q] * wi + im[q] * wr;
+                    re[q] = re[p] - tr;
+                    im[q] = im[p] - ti;
+                    re[p] += tr;
+                    im[p] += ti;
+                }
+            }
+        }
+    }
+
+    private void bluestein(double[] re, double[] im, int offset) {
+        double[][] work = scratch.get();
+        double[] wr = work[0];
+        double[] wi = work[1];
+        int m = wr.length;
+
+        // Input times the chirp, padded with zeros
+        for (int k = 0; k < n; k++) {
+            double xr = re[offset + k];
+            double xi = im[offset + k];
+            wr[k] = xr * chirpRe[k] - xi * chirpIm[k];
+            wi[k] = xr * chirpIm[k] + xi * chirpRe[k];
+        }
+        Arrays.fill(wr, n, m, 0);
+        Arrays.fill(wi, n, m, 0);
+
+        // Convolve with the conjugate chirp
+        inner.transform(wr, wi, 0, false);
+        for (int k = 0; k < m; k++) {
+            double r = wr[k] * filterRe[k] - wi[k] * filterIm[k];
+            double i = wr[k] * filterIm[k] + wi[k] * filterRe[k];
+            wr[k] = r;
+            wi[k] = i;
+        }
+        inner.transform(wr, wi, 0, true);
+
+        // Scale the unscaled inverse and multiply by the chirp again
+        double scale = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double cr = wr[k] * scale;
+            double ci = wi[k] * scale;
+            re[offset + k] = cr * chirpRe[k] - ci * chirpIm[k];
+            im[offset + k] = cr * chirpIm[k] + ci * chirpRe[k];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package Java.ReactionDiffusion;
+
+/**
+ * FitzHugh-Nagumo model with Turing-unstable parameters, which grows a
+ * maze of stripes from any disturbance:
+ *
+ *   du/dt = Du * lap(u) + u - u^3 - v + k
+ *   dv/dt = (Dv * lap(v) + u - v) / tau
+ *
+ * on the 5-point Laplacian, stepped with forward Euler. u and v range over
+ * about -1 .. 1, so B holds (u + 1) / 2 and A holds (v + 1) / 2 to keep
+ * the displayed species in the colormap's range; the Laplacians scale by
+ * the same factor and need no offset, since the weights sum to zero.
+ */
+public final class FitzHughNagumoModel implements ReactionModel {
+    private static final Stencil STENCIL = Stencil.fivePoint();
+
+    // Diffusion rates in cells^2 per unit of time, and the other constants
+    private static final double DIFFUSION_U = 0.7;
+    private static final double DIFFUSION_V = 12.5;
+    private static final double TAU = 0.1;
+    private static final double K = -0.005;
+
+    // Time per step, half the limit of 1 / (4 * Dv / tau) the inhibitor sets
+    private static final double TIME_STEP = 0.001;
+
+    // Rest state u = v = cbrt(k), stored as (u + 1) / 2
+    private static final double REST = (Math.cbrt(K) + 1) / 2;
+
+    @Override
+    public String getName() {
+        return "FitzHugh-Nagumo";
+    }
+
+    @Override
+    public Stencil getStencil() {
+        return STENCIL;
+    }
+
+    @Override
+    public double getBoundaryA() {
+        return REST;
+    }
+
+    @Override
+    public double getBoundaryB() {
+        return REST;
+    }
+
+    @Override
+    public double getSeedA() {
+        return REST;
+    }
+
+    @Override
+    public double getSeedB() {
+        return 1.0;
+    }
+
+    @Override
+    public double nextA(double a, double b, double laplaceA, double laplaceB) {
+        double u = 2 * b - 1;
+        double v = 2 * a - 1;
+        double newV = v + TIME_STEP * (DIFFUSION_V * 2 * laplaceA + u - v) / TAU;
+        return (newV + 1) * 0.5;
+    }
+
+    @Override
+    public double nextB(double a, double b, double laplaceA, double laplaceB) {
+        double u = 2 * b - 1;
+        double v = 2 * a - 1;
+        double newU = u + TIME_STEP * (DIFFUSION_U * 2 * laplaceB + u - u * u * u - v + K);
+        return (newU + 1) * 0.5;
+    }
+}
@@ -0,0 +1,163 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Row kernel for the Gray-Scott step on the flat, padded grids. It
+ * computes one step for a run of cells in a row, reading the current
+ * fields and writing the next ones at the same positions; stride is the
+ * distance between vertically adjacent cells.
+ *
+ * A SIMD implementation built on jdk.incubator.vector lives in
+ * Java.ReactionDiffusion.simd and is compiled separately, since it needs
+ * the incubator module. best() uses it when it is on the classpath and
+ * the module is loaded, and falls back to the scalar loops otherwise.
+ * Every implementation must round exactly like the scalar one.
+ */
+public interface GrayScottKernel {
+    String VECTOR_KERNEL_CLASS = "Java.ReactionDiffusion.simd.VectorGrayScottKernel";
+
+    // Stencil weights of the 3x3 Laplacian (the center weight is -1)
+    double EDGE_WEIGHT = 0.2;
+    double CORNER_WEIGHT = 0.05;
+
+    // Fraction of the computed change applied per step
+    double STEP_FACTOR = 0.9;
+
+    // The same constants for the single-precision step
+    float EDGE_WEIGHT_F = (float) EDGE_WEIGHT;
+    float CORNER_WEIGHT_F = (float) CORNER_WEIGHT;
+    float STEP_FACTOR_F = (float) STEP_FACTOR;
+
+    /**
+     * B below this is flushed to zero in single precision. The faint tail
+     * of B ahead of a pattern otherwise decays into subnormal floats
+     * (b * b underflows first), which are many times slower to compute
+     * with. The flushed amounts are far below what the display or the
+     * reaction can resolve.
+     */
+    float MIN_B = 1e-15f;
+
+    void stepRow(double[] gridA, double[] gridB, double[] nextA, double[] nextB,
+                 int from, int to, int stride,
+                 double dA, double dB, double feed, double kill);
+
+    void stepRow(float[] gridA, float[] gridB, float[] nextA, float[] nextB,
+                 int from, int to, int stride,
+                 double dA, double dB, double feed, double kill);
+
+    String getName();
+
+    static GrayScottKernel scalar() {
+        return ScalarGrayScottKernel.INSTANCE;
+    }
+
+    // The SIMD kernel if it can be loaded, otherwise the scalar one
+    static GrayScottKernel best() {
+        try {
+            return (GrayScottKernel) Class.forName(VECTOR_KERNEL_CLASS)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar();
+        }
+    }
+}
+
+/**
+ * Plain loop version of the Gray-Scott row step
+ */
+final class ScalarGrayScottKernel implements GrayScottKernel {
+    static final ScalarGrayScottKernel INSTANCE = new ScalarGrayScottKernel();
+
+    @Override
+    public void stepRow(double[] gridA, double[] gridB, double[] nextA, double[] nextB,
+                        int from, int to, int stride,
+                        double dA, double dB, double feed, double kill) {
+        for (int k = from; k < to; k++) {
+            double a = gridA[k];
+            double b = gridB[k];
+
+            // 3x3 kernel, neighbors in the same order as ArrayGrid
+            double laplaceA = 0;
+            laplaceA += gridA[k - 1] * EDGE_WEIGHT;
+            laplaceA += gridA[k + 1] * EDGE_WEIGHT;
+            laplaceA += gridA[k - stride] * EDGE_WEIGHT;
+            laplaceA += gridA[k + stride] * EDGE_WEIGHT;
+            laplaceA += gridA[k - stride - 1] * CORNER_WEIGHT;
+            laplaceA += gridA[k - stride + 1] * CORNER_WEIGHT;
+            laplaceA += gridA[k + stride - 1] * CORNER_WEIGHT;
+            laplaceA += gridA[k + stride + 1] * CORNER_WEIGHT;
+            laplaceA -= a * 1.0;
+
+            double laplaceB = 0;
+            laplaceB += gridB[k - 1] * EDGE_WEIGHT;
+            laplaceB += gridB[k + 1] * EDGE_WEIGHT;
+            laplaceB += gridB[k - stride] * EDGE_WEIGHT;
+            laplaceB += gridB[k + stride] * EDGE_WEIGHT;
+            laplaceB += gridB[k - stride - 1] * CORNER_WEIGHT;
+            laplaceB += gridB[k - stride + 1] * CORNER_WEIGHT;
+            laplaceB += gridB[k + stride - 1] * CORNER_WEIGHT;
+            laplaceB += gridB[k + stride + 1] * CORNER_WEIGHT;
+            laplaceB -= b * 1.0;
+
+            // Gray-Scott reaction-diffusion formula
+            double reaction = a * b * b;
+            double newA = a + (dA * laplaceA - reaction + feed * (1 - a)) * STEP_FACTOR;
+            double newB = b + (dB * laplaceB + reaction - (kill + feed) * b) * STEP_FACTOR;
+
+            // Constrain values for stability
+            nextA[k] = Math.max(0, Math.min(1, newA));
+            nextB[k] = Math.max(0, Math.min(1, newB));
+        }
+    }
+
+    @Override
+    public void stepRow(float[] gridA, float[] gridB, float[] nextA, float[] nextB,
+                        int from, int to, int stride,
+                        double dA, double dB, double feed, double kill) {
+        float diffusionA = (float) dA;
+        float diffusionB = (float) dB;
+        float feedRate = (float) feed;
+        float removal = (float) (kill + feed);
+
+        for (int k = from; k < to; k++) {
+            float a = gridA[k];
+            float b = gridB[k];
+
+            // 3x3 kernel
+            float laplaceA = 0;
+            laplaceA += gridA[k - 1] * EDGE_WEIGHT_F;
+            laplaceA += gridA[k + 1] * EDGE_WEIGHT_F;
+            laplaceA += gridA[k - stride] * EDGE_WEIGHT_F;
+            laplaceA += gridA[k + stride] * EDGE_WEIGHT_F;
+            laplaceA += gridA[k - stride - 1] * CORNER_WEIGHT_F;
+            laplaceA += gridA[k - stride + 1] * CORNER_WEIGHT_F;
+            laplaceA += gridA[k + stride - 1] * CORNER_WEIGHT_F;
+            laplaceA += gridA[k + stride + 1] * CORNER_WEIGHT_F;
+            laplaceA -= a;
+
+            float laplaceB = 0;
+            laplaceB += gridB[k - 1] * EDGE_WEIGHT_F;
+            laplaceB += gridB[k + 1] * EDGE_WEIGHT_F;
+            laplaceB += gridB[k - stride] * EDGE_WEIGHT_F;
+            laplaceB += gridB[k + stride] * EDGE_WEIGHT_F;
+            laplaceB += gridB[k - stride - 1] * CORNER_WEIGHT_F;
+            laplaceB += gridB[k - stride + 1] * CORNER_WEIGHT_F;
+            laplaceB += gridB[k + stride - 1] * CORNER_WEIGHT_F;
+            laplaceB += gridB[k + stride + 1] * CORNER_WEIGHT_F;
+            laplaceB -= b;
+
+            // Gray-Scott reaction-diffusion formula
+            float reaction = a * b * b;
+            float newA = a + (diffusionA * laplaceA - reaction + feedRate * (1 - a)) * STEP_FACTOR_F;
+            float newB = b + (diffusionB * laplaceB + reaction - removal * b) * STEP_FACTOR_F;
+
+            // Constrain values for stability
+            nextA[k] = Math.max(0f, Math.min(1f, newA));
+            nextB[k] = newB < MIN_B ? 0f : Math.min(1f, newB);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,35 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Available memory layouts for the reaction-diffusion fields
+ */
+enum GridStorage {
+    ARRAY("double[][]"),
+    FLAT_DOUBLE("Flat double"),
+    FLAT_FLOAT("Flat float"),
+    OFF_HEAP("Off-heap double");
+
+    private final String label;
+
+    GridStorage(String label) {
+        this.label = label;
+    }
+
+    public ReactionDiffusionGrid create(int width, int height) {
+        switch (this) {
+            case ARRAY:
+                return new ArrayGrid(width, height);
+            case FLAT_FLOAT:
+                return new PaddedFloatGrid(width, height);
+            case OFF_HEAP:
+                return new OffHeapGrid(width, height);
+            default:
+                return new PaddedDoubleGrid(width, height);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,22 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Time integration schemes for ReactionDiffusionSystem
+ */
+enum Integrator {
+    // Forward Euler on the grid, one STEP_FACTOR of time per step
+    EXPLICIT("Explicit"),
+    // Implicit diffusion in Fourier space, larger steps on a periodic domain
+    SPECTRAL("Semi-implicit FFT");
+
+    private final String label;
+
+    Integrator(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
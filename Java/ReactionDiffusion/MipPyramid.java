@@ -0,0 +1,139 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Averages of B at successively halved resolutions, for drawing a grid
+ * that is larger than the view. Level 0 is the grid itself and is not
+ * stored; each cell of level L is the mean of a 2x2 block of level L - 1,
+ * repeating the last row or column at odd edges. Values are kept as
+ * 16-bit fractions of 0 .. 1, a quarter of the grid's size in all.
+ *
+ * A tile of tileSize cells (a power of two) covers whole cells up to
+ * level log2(tileSize), so those levels are refreshed tile by tile, from
+ * the tile alone, and tiles may be refreshed in parallel. The levels
+ * above are small and are recomputed whole by refreshTop.
+ */
+final class MipPyramid {
+    private final int tileLevels;
+
+    // Stored levels by number; levels[0] is null
+    private final char[][] levels;
+    private final int[] levelWidth;
+    private final int[] levelHeight;
+
+    // Per-thread pair of grid rows for refreshing level 1
+    private final ThreadLocal<double[]> rows = new ThreadLocal<>();
+
+    MipPyramid(int width, int height, int tileSize) {
+        int count = levelCount(width, height);
+        levels = new char[count][];
+        levelWidth = new int[count];
+        levelHeight = new int[count];
+        levelWidth[0] = width;
+        levelHeight[0] = height;
+        for (int level = 1; level < count; level++) {
+            levelWidth[level] = (levelWidth[level - 1] + 1) / 2;
+            levelHeight[level] = (levelHeight[level - 1] + 1) / 2;
+            levels[level] = new char[levelWidth[level] * levelHeight[level]];
+        }
+        tileLevels = Math.min(count - 1, Integer.numberOfTrailingZeros(tileSize));
+    }
+
+    // Levels down to a single cell, including level 0
+    static int levelCount(int width, int height) {
+        int count = 1;
+        while (width > 1 || height > 1) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            count++;
+        }
+        return count;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return levelWidth[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return levelHeight[level];
+    }
+
+    // Cells of a stored level, row-major
+    public char[] getLevel(int level) {
+        return levels[level];
+    }
+
+    // Colormap table position of a stored value
+    static int colorIndex(char value) {
+        return value >> 4;
+    }
+
+    /**
+     * Recompute the tile-sized levels over the grid cells [startX, endX) x
+     * [startY, endY), a tile aligned to the tile size
+     */
+    public void refreshTile(ReactionDiffusionGrid grid, int startX, int startY, int endX, int endY) {
+        if (tileLevels == 0) {
+            return;
+        }
+        int width = levelWidth[0];
+        int height = levelHeight[0];
+        int count = endX - startX;
+        double[] pair = rows.get();
+        if (pair == null || pair.length < 2 * count) {
+            pair = new double[2 * count];
+            rows.set(pair);
+        }
+
+        char[] first = levels[1];
+        int firstWidth = levelWidth[1];
+        for (int y = startY; y < endY; y += 2) {
+            grid.getRowB(y, startX, count, pair, 0);
+            grid.getRowB(Math.min(y + 1, height - 1), startX, count, pair, count);
+            int out = (y / 2) * firstWidth + startX / 2;
+            for (int i = 0; i < count; i += 2) {
+                int right = startX + i + 1 < width ? i + 1 : i;
+                double sum = pair[i] + pair[right] + pair[count + i] + pair[count + right];
+                first[out + i / 2] = quantize(sum * 0.25);
+            }
+        }
+
+        for (int level = 2; level <= tileLevels; level++) {
+            int size = 1 << level;
+            downsample(level, startX / size, startY / size, (endX + size - 1) / size, (endY + size - 1) / size);
+        }
+    }
+
+    // Recompute the levels above the tile-sized ones from the finest of them
+    public void refreshTop() {
+        for (int level = tileLevels + 1; level < levels.length; level++) {
+            downsample(level, 0, 0, levelWidth[level], levelHeight[level]);
+        }
+    }
+
+    // Cells [x0, x1) x [y0, y1) of a level from the level below
+    private void downsample(int level, int x0, int y0, int x1, int y1) {
+        char[] source = levels[level - 1];
+        char[] target = levels[level];
+        int sourceWidth = levelWidth[level - 1];
+        int sourceHeight = levelHeight[level - 1];
+        int targetWidth = levelWidth[level];
+        for (int y = y0; y < y1; y++) {
+            int top = 2 * y * sourceWidth;
+            int bottom = Math.min(2 * y + 1, sourceHeight - 1) * sourceWidth;
+            for (int x = x0; x < x1; x++) {
+                int left = 2 * x;
+                int right = Math.min(2 * x + 1, sourceWidth - 1);
+                int sum = source[top + left] + source[top + right] + source[bottom + left] + source[bottom + right];
+                target[y * targetWidth + x] = (char) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    static char quantize(double b) {
+        return (char) Math.round(Math.max(0, Math.min(1, b)) * Character.MAX_VALUE);
+    }
+}
@@ -0,0 +1,440 @@
+package Java.ReactionDiffusion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fields stored outside the Java heap, row-major in doubles, for grids too
+ * large to keep as arrays (a 16k x 16k field is 2 GB per field, 8 GB for
+ * all four). Each field is split into chunks of whole rows of at most
+ * CHUNK_BYTES, since a single buffer cannot pass 2 GB. The chunks are
+ * either direct buffers (limited by -XX:MaxDirectMemorySize) or mappings
+ * of a file, in which case the operating system pages them in and out.
+ *
+ * A tile is stepped by copying it plus an apron into per-thread heap
+ * buffers, with the steady state (A=1, B=0) filled in outside the grid,
+ * running the row kernel there exactly as PaddedDoubleGrid does, and
+ * writing the tile back to the next fields. Results are bit-identical to
+ * PaddedDoubleGrid, and blocked steps come at no extra cost.
+ *
+ * A mapped file holds a header and both pairs of fields. Steps only ever
+ * write the next pair; swap() then records which pair is current and the
+ * step count in a single header word. After the process is killed, the
+ * file therefore still holds the last completed pass, and open() resumes
+ * from it. That only holds while the operating system outlives the
+ * process: the page cache may write out the header word of a later
+ * swap() before the fields it points to, so after a crash of the machine
+ * itself the file may not resume correctly, checkpoint() or not.
+ * checkpoint() forces the fields to disk and then the header, which
+ * narrows that window but does not close it.
+ *
+ * A new file gets its header (magic, size and state) only in the first
+ * checkpoint(), once the fields it describes are on disk. Until then
+ * open() does not recognize the file, so a run killed while the fields
+ * are being set up starts over instead of resuming from them.
+ */
+class OffHeapGrid extends ReactionDiffusionGrid {
+    // Largest chunk of a field; whole rows, well under the 2 GB buffer limit
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    // Space reserved at the start of a mapped file
+    private static final int HEADER_BYTES = 4096;
+    private static final long MAGIC = 0x5244475249443031L; // "RDGRID01"
+
+    /**
+     * One field, as chunks of rowsPerChunk rows each
+     */
+    private static class Field {
+        final DoubleBuffer[] chunks;
+        final int rowsPerChunk;
+        final int width;
+
+        Field(DoubleBuffer[] chunks, int rowsPerChunk, int width) {
+            this.chunks = chunks;
+            this.rowsPerChunk = rowsPerChunk;
+            this.width = width;
+        }
+
+        double get(int x, int y) {
+            return chunks[y / rowsPerChunk].get((y % rowsPerChunk) * width + x);
+        }
+
+        void put(int x, int y, double value) {
+            chunks[y / rowsPerChunk].put((y % rowsPerChunk) * width + x, value);
+        }
+
+        // Copy cells [x, x + length) of row y into dst
+        void getRow(int x, int y, int length, double[] dst, int offset) {
+            chunks[y / rowsPerChunk].get((y % rowsPerChunk) * width + x, dst, offset, length);
+        }
+
+        void putRow(int x, int y, int length, double[] src, int offset) {
+            chunks[y / rowsPerChunk].put((y % rowsPerChunk) * width + x, src, offset, length);
+        }
+    }
+
+    /**
+     * Per-thread buffers for stepping a tile, grown as needed
+     */
+    private static class Scratch {
+        double[] gridA = new double[0];
+        double[] gridB = new double[0];
+        double[] nextA = new double[0];
+        double[] nextB = new double[0];
+        double[] row = new double[0];
+
+        void ensure(int size, int rowLength) {
+            if (gridA.length < size) {
+                gridA = new double[size];
+                gridB = new double[size];
+                nextA = new double[size];
+                nextB = new double[size];
+            }
+            if (row.length < rowLength) {
+                row = new double[rowLength];
+            }
+        }
+
+        void swap() {
+            double[] tempA = gridA;
+            gridA = nextA;
+            nextA = tempA;
+
+            double[] tempB = gridB;
+            gridB = nextB;
+            nextB = tempB;
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    // Computes the step for each row of a tile
+    private GrayScottKernel kernel = GrayScottKernel.scalar();
+
+    // Both pairs of fields; index current holds the current values
+    private final Field[] fieldA = new Field[2];
+    private final Field[] fieldB = new Field[2];
+    private int current;
+
+    // Field mappings to force on checkpoint, empty for direct buffers
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final MappedByteBuffer header;
+    private final boolean resumed;
+
+    // Whether the header identifies the file as a grid; set by the first checkpoint of a new file
+    private boolean headerWritten;
+
+    // Fields in direct buffers, lost when the process exits
+    public OffHeapGrid(int width, int height) {
+        super(width, height);
+        int rowsPerChunk = rowsPerChunk(width);
+        for (int pair = 0; pair < 2; pair++) {
+            fieldA[pair] = allocate(width, height, rowsPerChunk);
+            fieldB[pair] = allocate(width, height, rowsPerChunk);
+        }
+        header = null;
+        resumed = false;
+    }
+
+    private OffHeapGrid(int width, int height, FileChannel channel, boolean existing) throws IOException {
+        super(width, height);
+        int rowsPerChunk = rowsPerChunk(width);
+        long fieldBytes = (long) width * height * 8;
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.nativeOrder());
+
+        // Fields in the order A0, B0, A1, B1 after the header
+        for (int pair = 0; pair < 2; pair++) {
+            fieldA[pair] = map(channel, HEADER_BYTES + (2L * pair) * fieldBytes, rowsPerChunk);
+            fieldB[pair] = map(channel, HEADER_BYTES + (2L * pair + 1) * fieldBytes, rowsPerChunk);
+        }
+
+        resumed = existing;
+        headerWritten = existing;
+        if (existing) {
+            long state = header.getLong(16);
+            current = (int) (state & 1);
+            setSteps(state >>> 1);
+        }
+    }
+
+    /**
+     * Map a grid onto a file, resuming the state saved there if the file
+     * already holds a grid of this size, or creating it otherwise.
+     */
+    public static OffHeapGrid open(Path file, int width, int height) {
+        boolean existing = holdsGrid(file, width, height);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mappings stay valid after the channel is closed
+            return new OffHeapGrid(width, height, channel, existing);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map grid file " + file, e);
+        }
+    }
+
+    // Whether the file has a header for a grid of this size
+    private static boolean holdsGrid(Path file, int width, int height) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES + 4L * width * height * 8) {
+                return false;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+            channel.read(bytes, 0);
+            return bytes.getLong(0) == MAGIC && bytes.getInt(8) == width && bytes.getInt(12) == height;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read grid file " + file, e);
+        }
+    }
+
+    private static int rowsPerChunk(int width) {
+        return Math.max(1, CHUNK_BYTES / (width * 8));
+    }
+
+    private static Field allocate(int width, int height, int rowsPerChunk) {
+        DoubleBuffer[] chunks = new DoubleBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+        for (int c = 0; c < chunks.length; c++) {
+            int rows = Math.min(rowsPerChunk, height - c * rowsPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(rows * width * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+        return new Field(chunks, rowsPerChunk, width);
+    }
+
+    private Field map(FileChannel channel, long offset, int rowsPerChunk) throws IOException {
+        DoubleBuffer[] chunks = new DoubleBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+        for (int c = 0; c < chunks.length; c++) {
+            int rows = Math.min(rowsPerChunk, height - c * rowsPerChunk);
+            long chunkOffset = offset + (long) c * rowsPerChunk * width * 8;
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset, (long) rows * width * 8);
+            mapping.order(ByteOrder.nativeOrder());
+            mappings.add(mapping);
+            chunks[c] = mapping.asDoubleBuffer();
+        }
+        return new Field(chunks, rowsPerChunk, width);
+    }
+
+    // Whether open() found a saved state instead of creating a new file
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    // Pair and step count in one aligned write, so a kill cannot split them
+    private void writeState() {
+        if (header != null) {
+            header.putLong(16, getSteps() << 1 | current);
+        }
+    }
+
+    @Override
+    public void setSteps(long steps) {
+        super.setSteps(steps);
+        writeState();
+    }
+
+    @Override
+    public void checkpoint() {
+        // The fields go first, so the header never describes data that is not on disk
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+        if (header != null) {
+            if (!headerWritten) {
+                header.putInt(8, width);
+                header.putInt(12, height);
+                header.putLong(0, MAGIC);
+                headerWritten = true;
+            }
+            writeState();
+            header.force();
+        }
+    }
+
+    @Override
+    public double getA(int x, int y) {
+        return fieldA[current].get(x, y);
+    }
+
+    @Override
+    public double getB(int x, int y) {
+        return fieldB[current].get(x, y);
+    }
+
+    @Override
+    public void getRowB(int y, int fromX, int count, double[] out, int offset) {
+        fieldB[current].getRow(fromX, y, count, out, offset);
+    }
+
+    @Override
+    public void set(int x, int y, double a, double b) {
+        fieldA[current].put(x, y, a);
+        fieldB[current].put(x, y, b);
+    }
+
+    @Override
+    public void fill(double a, double b) {
+        for (int pair = 0; pair < 2; pair++) {
+            fillRows(fieldA[pair], 0, 0, width, height, a);
+            fillRows(fieldB[pair], 0, 0, width, height, b);
+        }
+    }
+
+    private void fillRows(Field field, int startX, int startY, int endX, int endY, double value) {
+        Scratch local = scratch.get();
+        local.ensure(0, endX - startX);
+        Arrays.fill(local.row, 0, endX - startX, value);
+        for (int y = startY; y < endY; y++) {
+            field.putRow(startX, y, endX - startX, local.row, 0);
+        }
+    }
+
+    @Override
+    public void setKernel(GrayScottKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void updateTile(int startX, int startY, int endX, int endY,
+                           double dA, double dB, double feed, double kill) {
+        updateTileBlock(startX, startY, endX, endY, 1, dA, dB, feed, kill);
+    }
+
+    @Override
+    public boolean canBlockSteps() {
+        return true;
+    }
+
+    @Override
+    public void updateTileBlock(int startX, int startY, int endX, int endY, int steps,
+                                double dA, double dB, double feed, double kill) {
+        // The tile after n steps depends on the cells up to n away, so copy
+        // the tile plus an n-cell apron, clipped to a one-cell halo of
+        // boundary values around the grid, into scratch
+        int loX = Math.max(-1, startX - steps);
+        int hiX = Math.min(width + 1, endX + steps);
+        int loY = Math.max(-1, startY - steps);
+        int hiY = Math.min(height + 1, endY + steps);
+        int localStride = hiX - loX;
+
+        Scratch local = scratch.get();
+        local.ensure(localStride * (hiY - loY), 0);
+
+        // Halo cells are never computed, so the second buffer needs them too
+        boolean touchesHalo = loX < 0 || loY < 0 || hiX > width || hiY > height;
+        Field gridA = fieldA[current];
+        Field gridB = fieldB[current];
+        int fromX = Math.max(0, loX);
+        int toX = Math.min(width, hiX);
+        for (int y = loY; y < hiY; y++) {
+            int row = (y - loY) * localStride;
+            if (y < 0 || y >= height) {
+                fillHalo(local, row, row + localStride, touchesHalo);
+                continue;
+            }
+            gridA.getRow(fromX, y, toX - fromX, local.gridA, row + fromX - loX);
+            gridB.getRow(fromX, y, toX - fromX, local.gridB, row + fromX - loX);
+            if (loX < 0) {
+                fillHalo(local, row, row + 1, touchesHalo);
+            }
+            if (hiX > width) {
+                fillHalo(local, row + localStride - 1, row + localStride, touchesHalo);
+            }
+        }
+
+        // Each step shrinks the valid area by one cell until only the tile is left
+        for (int s = 1; s <= steps; s++) {
+            int grow = steps - s;
+            int stepFromX = Math.max(0, startX - grow);
+            int stepToX = Math.min(width, endX + grow);
+            int stepFromY = Math.max(0, startY - grow);
+            int stepToY = Math.min(height, endY + grow);
+            for (int y = stepFromY; y < stepToY; y++) {
+                int row = (y - loY) * localStride + stepFromX - loX;
+                kernel.stepRow(local.gridA, local.gridB, local.nextA, local.nextB,
+                        row, row + stepToX - stepFromX, localStride, dA, dB, feed, kill);
+            }
+            local.swap();
+        }
+
+        Field nextA = fieldA[1 - current];
+        Field nextB = fieldB[1 - current];
+        for (int y = startY; y < endY; y++) {
+            int from = (y - loY) * localStride + startX - loX;
+            nextA.putRow(startX, y, endX - startX, local.gridA, from);
+            nextB.putRow(startX, y, endX - startX, local.gridB, from);
+        }
+    }
+
+    // Boundary values in scratch cells [from, to), in both buffers if needed
+    private void fillHalo(Scratch local, int from, int to, boolean bothBuffers) {
+        Arrays.fill(local.gridA, from, to, boundaryA);
+        Arrays.fill(local.gridB, from, to, boundaryB);
+        if (bothBuffers) {
+            Arrays.fill(local.nextA, from, to, boundaryA);
+            Arrays.fill(local.nextB, from, to, boundaryB);
+        }
+    }
+
+    @Override
+    public boolean nextTileNearSteady(int startX, int startY, int endX, int endY, double epsilon) {
+        Scratch local = scratch.get();
+        int length = endX - startX;
+        local.ensure(0, 2 * length);
+        double[] row = local.row;
+        for (int y = startY; y < endY; y++) {
+            fieldA[1 - current].getRow(startX, y, length, row, 0);
+            fieldB[1 - current].getRow(startX, y, length, row, length);
+            for (int x = 0; x < length; x++) {
+                if (Math.abs(row[x] - boundaryA) > epsilon || Math.abs(row[length + x] - boundaryB) > epsilon) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void fillNextTile(int startX, int startY, int endX, int endY, double a, double b) {
+        fillRows(fieldA[1 - current], startX, startY, endX, endY, a);
+        fillRows(fieldB[1 - current], startX, startY, endX, endY, b);
+    }
+
+    @Override
+    public void toPixels(int[] pixels, int[] colors, int fromRow, int toRow) {
+        Scratch local = scratch.get();
+        local.ensure(0, width);
+        double[] row = local.row;
+        for (int y = fromRow; y < toRow; y++) {
+            fieldB[current].getRow(0, y, width, row, 0);
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[out + x] = colors[Colormap.index(row[x])];
+            }
+        }
+    }
+
+    @Override
+    public void swap() {
+        current = 1 - current;
+        writeState();
+    }
+
+    @Override
+    public long getBytes() {
+        return 4L * width * height * 8;
+    }
+}
@@ -0,0 +1,86 @@
+package Java.ReactionDiffusion;
+
+import java.util.Arrays;
+
+/**
+ * Fields stored row-major in one flat double[] each, in the padded layout
+ * of PaddedGrid.
+ *
+ * The row kernels do the arithmetic in the same order as ArrayGrid, so
+ * both give bit-identical results.
+ */
+class PaddedDoubleGrid extends PaddedGrid<double[]> {
+    public PaddedDoubleGrid(int width, int height) {
+        super(width, height);
+    }
+
+    @Override
+    protected double[] newField(int size) {
+        return new double[size];
+    }
+
+    @Override
+    protected void fillRange(double[] field, int from, int to, double value) {
+        Arrays.fill(field, from, to, value);
+    }
+
+    @Override
+    protected void stepRow(double[] gridA, double[] gridB, double[] nextA, double[] nextB, int from, int to,
+                           int stride, double dA, double dB, double feed, double kill) {
+        kernel.stepRow(gridA, gridB, nextA, nextB, from, to, stride, dA, dB, feed, kill);
+    }
+
+    @Override
+    public double getA(int x, int y) {
+        return gridA[index(x, y)];
+    }
+
+    @Override
+    public double getB(int x, int y) {
+        return gridB[index(x, y)];
+    }
+
+    @Override
+    public void getRowB(int y, int fromX, int count, double[] out, int offset) {
+        System.arraycopy(gridB, index(fromX, y), out, offset, count);
+    }
+
+    @Override
+    public void set(int x, int y, double a, double b) {
+        int k = index(x, y);
+        gridA[k] = a;
+        gridB[k] = b;
+    }
+
+    @Override
+    public boolean nextTileNearSteady(int startX, int startY, int endX, int endY, double epsilon) {
+        double[] nextA = this.nextA;
+        double[] nextB = this.nextB;
+        for (int y = startY; y < endY; y++) {
+            int row = index(startX, y);
+            for (int k = row; k < row + endX - startX; k++) {
+                if (Math.abs(nextA[k] - boundaryA) > epsilon || Math.abs(nextB[k] - boundaryB) > epsilon) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void toPixels(int[] pixels, int[] colors, int fromRow, int toRow) {
+        double[] gridB = this.gridB;
+        for (int y = fromRow; y < toRow; y++) {
+            int in = index(0, y);
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[out + x] = colors[Colormap.index(gridB[in + x])];
+            }
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return 4L * gridA.length * 8;
+    }
+}
@@ -0,0 +1,90 @@
+package Java.ReactionDiffusion;
+
+import java.util.Arrays;
+
+/**
+ * Single-precision version of PaddedDoubleGrid: the same flat, padded,
+ * row-major layout, with the step computed entirely in float. This halves
+ * the memory and bandwidth of the fields, at the cost of rounding errors
+ * that grow as patterns develop (see ReactionDiffusionBenchmark) and of
+ * flushing negligible amounts of B to zero (see GrayScottKernel.MIN_B).
+ */
+class PaddedFloatGrid extends PaddedGrid<float[]> {
+    public PaddedFloatGrid(int width, int height) {
+        super(width, height);
+    }
+
+    @Override
+    protected float[] newField(int size) {
+        return new float[size];
+    }
+
+    @Override
+    protected void fillRange(float[] field, int from, int to, double value) {
+        Arrays.fill(field, from, to, (float) value);
+    }
+
+    @Override
+    protected void stepRow(float[] gridA, float[] gridB, float[] nextA, float[] nextB, int from, int to,
+                           int stride, double dA, double dB, double feed, double kill) {
+        kernel.stepRow(gridA, gridB, nextA, nextB, from, to, stride, dA, dB, feed, kill);
+    }
+
+    @Override
+    public double getA(int x, int y) {
+        return gridA[index(x, y)];
+    }
+
+    @Override
+    public double getB(int x, int y) {
+        return gridB[index(x, y)];
+    }
+
+    @Override
+    public void getRowB(int y, int fromX, int count, double[] out, int offset) {
+        float[] gridB = this.gridB;
+        int from = index(fromX, y);
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = gridB[from + i];
+        }
+    }
+
+    @Override
+    public void set(int x, int y, double a, double b) {
+        int k = index(x, y);
+        gridA[k] = (float) a;
+        gridB[k] = (float) b;
+    }
+
+    @Override
+    public boolean nextTileNearSteady(int startX, int startY, int endX, int endY, double epsilon) {
+        float[] nextA = this.nextA;
+        float[] nextB = this.nextB;
+        for (int y = startY; y < endY; y++) {
+            int row = index(startX, y);
+            for (int k = row; k < row + endX - startX; k++) {
+                if (Math.abs(nextA[k] - boundaryA) > epsilon || Math.abs(nextB[k] - boundaryB) > epsilon) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void toPixels(int[] pixels, int[] colors, int fromRow, int toRow) {
+        float[] gridB = this.gridB;
+        for (int y = fromRow; y < toRow; y++) {
+            int in = index(0, y);
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[out + x] = colors[Colormap.index(gridB[in + x])];
+            }
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return 4L * gridA.length * 4;
+    }
+}
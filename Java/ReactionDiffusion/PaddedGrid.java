@@ -0,0 +1,214 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Fields stored row-major in one flat primitive array each, with a one-cell
+ * halo around the grid. The halo holds the boundary values (A=1, B=0 by
+ * default) and is never written by the step, so every cell, including the
+ * border ones, reads its eight neighbors at fixed offsets without bounds
+ * checks.
+ *
+ * Blocked steps (updateTileBlock) copy a tile plus an apron as wide as the
+ * number of steps into per-thread scratch buffers, advance it there, and
+ * write back only the tile. The aprons of neighboring tiles overlap and
+ * are computed twice, but the fields are read and written once per block
+ * instead of once per step.
+ *
+ * F is the array type of the fields, double[] or float[]. This class does
+ * the layout, tiling and copying for both; subclasses allocate and fill
+ * arrays of their type and read cells out of them, and pass rows to the
+ * GrayScottKernel overload for it.
+ */
+abstract class PaddedGrid<F> extends ReactionDiffusionGrid {
+    // Distance between vertically adjacent cells
+    protected final int stride;
+
+    // Computes the step for each row of a tile
+    protected GrayScottKernel kernel = GrayScottKernel.scalar();
+
+    protected F gridA;
+    protected F gridB;
+    protected F nextA;
+    protected F nextB;
+
+    /**
+     * Per-thread buffers for blocked steps, grown as needed
+     */
+    private class Scratch {
+        int capacity;
+        F gridA = newField(0);
+        F gridB = newField(0);
+        F nextA = newField(0);
+        F nextB = newField(0);
+
+        void ensure(int size) {
+            if (capacity < size) {
+                capacity = size;
+                gridA = newField(size);
+                gridB = newField(size);
+                nextA = newField(size);
+                nextB = newField(size);
+            }
+        }
+
+        void swap() {
+            F tempA = gridA;
+            gridA = nextA;
+            nextA = tempA;
+
+            F tempB = gridB;
+            gridB = nextB;
+            nextB = tempB;
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    protected PaddedGrid(int width, int height) {
+        super(width, height);
+        stride = width + 2;
+        int size = stride * (height + 2);
+        gridA = newField(size);
+        gridB = newField(size);
+        nextA = newField(size);
+        nextB = newField(size);
+
+        // The interior is overwritten by fill(); the halo starts at A=1, B=0
+        fillRange(gridA, 0, size, 1.0);
+        fillRange(nextA, 0, size, 1.0);
+    }
+
+    // A zeroed field array of the given length
+    protected abstract F newField(int size);
+
+    // Set field[from .. to - 1] to value
+    protected abstract void fillRange(F field, int from, int to, double value);
+
+    // Run the kernel over one row, as GrayScottKernel.stepRow
+    protected abstract void stepRow(F gridA, F gridB, F nextA, F nextB, int from, int to, int stride,
+                                    double dA, double dB, double feed, double kill);
+
+    // Position of cell (x, y) in the flat arrays
+    protected int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    @Override
+    public void fill(double a, double b) {
+        for (int y = 0; y < height; y++) {
+            int from = index(0, y);
+            int to = from + width;
+            fillRange(gridA, from, to, a);
+            fillRange(gridB, from, to, b);
+            fillRange(nextA, from, to, a);
+            fillRange(nextB, from, to, b);
+        }
+    }
+
+    @Override
+    public void setBoundary(double a, double b) {
+        super.setBoundary(a, b);
+        fillHalo(gridA, a);
+        fillHalo(gridB, b);
+        fillHalo(nextA, a);
+        fillHalo(nextB, b);
+    }
+
+    // The rows above and below the grid and the columns left and right of it
+    private void fillHalo(F field, double value) {
+        fillRange(field, 0, stride, value);
+        fillRange(field, (height + 1) * stride, (height + 2) * stride, value);
+        for (int y = 1; y <= height; y++) {
+            fillRange(field, y * stride, y * stride + 1, value);
+            fillRange(field, y * stride + width + 1, y * stride + width + 2, value);
+        }
+    }
+
+    @Override
+    public void setKernel(GrayScottKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void updateTile(int startX, int startY, int endX, int endY,
+                           double dA, double dB, double feed, double kill) {
+        for (int y = startY; y < endY; y++) {
+            int row = index(startX, y);
+            stepRow(gridA, gridB, nextA, nextB, row, row + endX - startX, stride, dA, dB, feed, kill);
+        }
+    }
+
+    @Override
+    public boolean canBlockSteps() {
+        return true;
+    }
+
+    @Override
+    public void updateTileBlock(int startX, int startY, int endX, int endY, int steps,
+                                double dA, double dB, double feed, double kill) {
+        // The tile after n steps depends on the cells up to n away, so copy
+        // the tile plus an n-cell apron (clipped to the halo) into scratch
+        int loX = Math.max(-1, startX - steps);
+        int hiX = Math.min(width + 1, endX + steps);
+        int loY = Math.max(-1, startY - steps);
+        int hiY = Math.min(height + 1, endY + steps);
+        int localStride = hiX - loX;
+
+        Scratch local = scratch.get();
+        local.ensure(localStride * (hiY - loY));
+
+        // Halo cells are never computed, so at the grid edges the second
+        // buffer needs a copy too for them to read the same in either
+        boolean touchesHalo = loX < 0 || loY < 0 || hiX > width || hiY > height;
+        for (int y = loY; y < hiY; y++) {
+            int from = (y + 1) * stride + loX + 1;
+            int to = (y - loY) * localStride;
+            System.arraycopy(gridA, from, local.gridA, to, localStride);
+            System.arraycopy(gridB, from, local.gridB, to, localStride);
+            if (touchesHalo) {
+                System.arraycopy(gridA, from, local.nextA, to, localStride);
+                System.arraycopy(gridB, from, local.nextB, to, localStride);
+            }
+        }
+
+        // Each step shrinks the valid area by one cell until only the tile is left
+        for (int s = 1; s <= steps; s++) {
+            int grow = steps - s;
+            int fromX = Math.max(0, startX - grow);
+            int toX = Math.min(width, endX + grow);
+            int fromY = Math.max(0, startY - grow);
+            int toY = Math.min(height, endY + grow);
+            for (int y = fromY; y < toY; y++) {
+                int row = (y - loY) * localStride + fromX - loX;
+                stepRow(local.gridA, local.gridB, local.nextA, local.nextB,
+                        row, row + toX - fromX, localStride, dA, dB, feed, kill);
+            }
+            local.swap();
+        }
+
+        for (int y = startY; y < endY; y++) {
+            int from = (y - loY) * localStride + startX - loX;
+            System.arraycopy(local.gridA, from, nextA, index(startX, y), endX - startX);
+            System.arraycopy(local.gridB, from, nextB, index(startX, y), endX - startX);
+        }
+    }
+
+    @Override
+    public void fillNextTile(int startX, int startY, int endX, int endY, double a, double b) {
+        for (int y = startY; y < endY; y++) {
+            int row = index(startX, y);
+            fillRange(nextA, row, row + endX - startX, a);
+            fillRange(nextB, row, row + endX - startX, b);
+        }
+    }
+
+    @Override
+    public void swap() {
+        F tempA = gridA;
+        gridA = nextA;
+        nextA = tempA;
+
+        F tempB = gridB;
+        gridB = nextB;
+        nextB = tempB;
+    }
+}
@@ -0,0 +1,190 @@
+package Java.ReactionDiffusion;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a map of the Gray-Scott patterns over a grid of (feed, kill)
+ * values, in the style of Pearson's classification: kill increases to the
+ * right and feed upwards. Each cell of the map is a small, single-threaded
+ * ReactionDiffusionSystem stepped on its own; a fixed pool with one thread
+ * per core runs them concurrently. The systems use the spectral integrator
+ * by default, whose periodic domain keeps the fixed border of the explicit
+ * step from dominating small thumbnails.
+ *
+ * The atlas is streamed to a PNG one row of thumbnails at a time. Jobs
+ * are submitted in row order, at most a few per thread ahead of the row
+ * being written, so memory holds one row of thumbnails plus one small
+ * system per thread. That does not grow with the number of feed rows,
+ * but it does grow with the number of kill columns, since every PNG
+ * scanline crosses the whole row; a row may hold at most MAX_ROW_PIXELS
+ * pixels, and wider sweeps are rejected up front.
+ *
+ * Usage: java Java.ReactionDiffusion.ParameterSweep atlas.png [feeds] [kills] [thumbnail size] [time]
+ *   [min feed] [max feed] [min kill] [max kill]
+ */
+public class ParameterSweep {
+    // Largest row of thumbnails held in memory: 64M pixels, 256 MB
+    static final int MAX_ROW_PIXELS = 1 << 26;
+
+    private final int feeds;
+    private final int kills;
+    private final int size;
+    private final double time;
+    private final double minFeed;
+    private final double maxFeed;
+    private final double minKill;
+    private final double maxKill;
+    private Colormap colormap = Colormap.INFERNO;
+    private Integrator integrator = Integrator.SPECTRAL;
+
+    public ParameterSweep(int feeds, int kills, int size, double time,
+                          double minFeed, double maxFeed, double minKill, double maxKill) {
+        if ((long) kills * size * size > MAX_ROW_PIXELS) {
+            throw new IllegalArgumentException("A row of " + kills + " thumbnails of " + size + "x" + size
+                    + " exceeds " + MAX_ROW_PIXELS + " pixels; use at most "
+                    + MAX_ROW_PIXELS / ((long) size * size) + " kill columns at this size");
+        }
+        this.feeds = feeds;
+        this.kills = kills;
+        this.size = size;
+        this.time = time;
+        this.minFeed = minFeed;
+        this.maxFeed = maxFeed;
+        this.minKill = minKill;
+        this.maxKill = maxKill;
+    }
+
+    public void setColormap(Colormap colormap) {
+        this.colormap = colormap;
+    }
+
+    public void setIntegrator(Integrator integrator) {
+        this.integrator = integrator;
+    }
+
+    // Feed of a thumbnail row, highest at the top
+    private double feed(int row) {
+        return feeds == 1 ? minFeed : maxFeed - (maxFeed - minFeed) * row / (feeds - 1);
+    }
+
+    private double kill(int column) {
+        return kills == 1 ? minKill : minKill + (maxKill - minKill) * column / (kills - 1);
+    }
+
+    /**
+     * Run every system and write the atlas, kills * size pixels wide and
+     * feeds * size pixels high
+     */
+    public void render(OutputStream out, int threads) throws IOException, InterruptedException {
+        String description = String.format("Gray-Scott sweep: kill %.4f to %.4f left to right, feed %.4f to %.4f "
+                + "bottom to top, time %.0f on %dx%d, %s", minKill, maxKill, minFeed, maxFeed, time, size, size, integrator);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "parameter-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Pixels of the row of thumbnails being assembled
+        int[] band = new int[kills * size * size];
+        int maxPending = 4 * threads;
+        ArrayDeque<Future<int[]>> pending = new ArrayDeque<>();
+        int submitted = 0;
+        long start = System.nanoTime();
+
+        try (PngStreamWriter png = new PngStreamWriter(out, kills * size, feeds * size, description)) {
+            for (int job = 0; job < feeds * kills; job++) {
+                while (submitted < feeds * kills && pending.size() < maxPending) {
+                    int row = submitted / kills;
+                    int column = submitted % kills;
+                    int seed = submitted;
+                    pending.add(executor.submit(() -> thumbnail(feed(row), kill(column), seed)));
+                    submitted++;
+                }
+
+                int[] pixels = await(pending.poll());
+                int column = job % kills;
+                for (int y = 0; y < size; y++) {
+                    System.arraycopy(pixels, y * size, band, y * kills * size + column * size, size);
+                }
+
+                if (column == kills - 1) {
+                    for (int y = 0; y < size; y++) {
+                        png.writeRow(band, y * kills * size);
+                    }
+                    int row = job / kills;
+                    System.out.printf("feed %.4f: row %d of %d done after %.1f s%n",
+                            feed(row), row + 1, feeds, (System.nanoTime() - start) / 1e9);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // One system, stepped and converted to colors on the calling thread
+    private int[] thumbnail(double feed, double kill, int seed) {
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(size, size, 1, GridStorage.FLAT_DOUBLE);
+        system.setKernel(GrayScottKernel.best());
+        system.setParameters(feed, kill);
+        system.setIntegrator(integrator);
+        system.initialize();
+
+        // A few extra spots break the symmetry of the center square
+        Random random = new Random(seed);
+        for (int i = 0; i < 3; i++) {
+            system.addChemical(random.nextInt(size), random.nextInt(size));
+        }
+
+        double stepTime = integrator == Integrator.SPECTRAL ? system.getSpectralTimeStep() : GrayScottKernel.STEP_FACTOR;
+        system.update((int) Math.ceil(time / stepTime));
+        int[] pixels = new int[size * size];
+        system.render(pixels, colormap.getTable());
+        system.shutdown();
+        return pixels;
+    }
+
+    private static int[] await(Future<int[]> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Sweep job failed", e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ParameterSweep atlas.png [feeds] [kills] [thumbnail size] [time] "
+                    + "[min feed] [max feed] [min kill] [max kill]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int feeds = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int kills = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int size = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        double time = args.length > 4 ? Double.parseDouble(args[4]) : 5000;
+        double minFeed = args.length > 5 ? Double.parseDouble(args[5]) : 0.01;
+        double maxFeed = args.length > 6 ? Double.parseDouble(args[6]) : 0.10;
+        double minKill = args.length > 7 ? Double.parseDouble(args[7]) : 0.045;
+        double maxKill = args.length > 8 ? Double.parseDouble(args[8]) : 0.070;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        ParameterSweep sweep = new ParameterSweep(feeds, kills, size, time, minFeed, maxFeed, minKill, maxKill);
+        long start = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            sweep.render(out, threads);
+        }
+        System.out.printf("Wrote %s (%dx%d) with %d threads in %.1f s%n", file,
+                kills * size, feeds * size, threads, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,143 @@
+package Java.ReactionDiffusion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an RGB PNG one scanline at a time, so an image far larger than
+ * memory can be produced in order from top to bottom. ImageIO needs the
+ * whole image up front; here only the compressor's window and one IDAT
+ * chunk are buffered.
+ */
+class PngStreamWriter implements Closeable {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // Compressed bytes per IDAT chunk
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final DeflaterOutputStream deflater;
+    private final byte[] scanline;
+    private int rows;
+
+    public PngStreamWriter(OutputStream out, int width, int height, String description) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        scanline = new byte[1 + 3 * width];
+
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(header);
+        fields.writeInt(width);
+        fields.writeInt(height);
+        fields.writeByte(8); // bits per channel
+        fields.writeByte(2); // RGB
+        fields.writeByte(0); // deflate
+        fields.writeByte(0); // adaptive filtering
+        fields.writeByte(0); // not interlaced
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        if (description != null) {
+            byte[] text = ("Description\0" + description).getBytes(StandardCharsets.ISO_8859_1);
+            writeChunk("tEXt", text, text.length);
+        }
+
+        deflater = new DeflaterOutputStream(new IdatStream(), new Deflater(Deflater.DEFAULT_COMPRESSION), 1 << 16);
+    }
+
+    /**
+     * Append the next scanline from width 0xRRGGBB pixels starting at
+     * offset. Rows go from top to bottom.
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        if (rows == height) {
+            throw new IllegalStateException("All " + height + " rows have been written");
+        }
+        // Filter type 0 (none); the rows of a sweep rarely gain from others
+        scanline[0] = 0;
+        for (int x = 0; x < width; x++) {
+            int rgb = pixels[offset + x];
+            scanline[1 + 3 * x] = (byte) (rgb >> 16);
+            scanline[2 + 3 * x] = (byte) (rgb >> 8);
+            scanline[3 + 3 * x] = (byte) rgb;
+        }
+        deflater.write(scanline);
+        rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows != height) {
+            throw new IllegalStateException("Only " + rows + " of " + height + " rows were written");
+        }
+        deflater.close();
+        writeChunk("IEND", new byte[0], 0);
+        out.close();
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Collects compressed bytes and writes them out as IDAT chunks. Closing
+     * it writes the last partial chunk but leaves the file open.
+     */
+    private class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_BYTES];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == buffer.length) {
+                flushChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+    }
+}
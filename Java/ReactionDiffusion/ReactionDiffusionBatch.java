@@ -0,0 +1,49 @@
+package Java.ReactionDiffusion;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs a large reaction-diffusion field without a window, on an
+ * OffHeapGrid mapped onto a file. The grid is checkpointed every few
+ * steps; if the run is killed, starting it again with the same file and
+ * size resumes from the last completed pass instead of starting over.
+ *
+ * Usage: java Java.ReactionDiffusion.ReactionDiffusionBatch file [size] [steps] [checkpoint interval]
+ *
+ * The file takes 32 bytes per cell (8 GB for 16384 x 16384).
+ */
+public class ReactionDiffusionBatch {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReactionDiffusionBatch file [size] [steps] [checkpoint interval]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 16384;
+        long steps = args.length > 2 ? Long.parseLong(args[2]) : 10000;
+        int interval = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        OffHeapGrid grid = OffHeapGrid.open(file, size, size);
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(grid, Runtime.getRuntime().availableProcessors());
+        system.setKernel(GrayScottKernel.best());
+        if (grid.isResumed()) {
+            System.out.printf("Resuming %s at step %d%n", file, system.getSteps());
+        } else {
+            // The file is only marked as a grid once the fields are set up and flushed
+            system.initialize();
+            system.checkpoint();
+            System.out.printf("Started %s, %dx%d, %.1f GB%n", file, size, size, grid.getBytes() / 1e9);
+        }
+
+        while (system.getSteps() < steps) {
+            int batch = (int) Math.min(interval, steps - system.getSteps());
+            long start = System.nanoTime();
+            system.update(batch);
+            system.checkpoint();
+            System.out.printf("step %d: %.1f steps/s, %d of %d tiles stepped%n",
+                    system.getSteps(), batch * 1e9 / (System.nanoTime() - start),
+                    system.getSteppedTiles(), system.getTileCount());
+        }
+    }
+}
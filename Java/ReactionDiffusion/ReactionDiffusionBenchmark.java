@@ -0,0 +1,545 @@
+package Java.ReactionDiffusion;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Command-line benchmark for the reaction-diffusion step. It checks that
+ * the result does not depend on the number of worker threads, compares
+ * the flat, float and off-heap layouts against the original double[][]
+ * one, checks that a mapped grid resumes where it left off, that
+ * temporally blocked steps match single steps exactly and that the SIMD
+ * row kernel matches the scalar one exactly, as does Gray-Scott run
+ * through the generic stencil engine, and measures steps per second for
+ * each layout, thread count, kernel and model, with blocking and with
+ * quiet tiles skipped on a larger field, the cost of turning the grid
+ * into a frame image, or a zoomed view of a large field into one through
+ * the mip pyramid, and of painting queued brush strokes.
+ *
+ * Finally it checks the in-house FFT against a direct DFT and compares
+ * the semi-implicit spectral integrator with the explicit step: the time
+ * each takes to settle from the same seeded pattern, and the pattern they
+ * settle into away from the edges, where their boundaries differ.
+ *
+ * It exits with status 1 if any check that must hold exactly does not.
+ *
+ * Usage: java Java.ReactionDiffusion.ReactionDiffusionBenchmark [width] [height] [steps] [large size] [settle size]
+ *
+ * To include the SIMD kernel, compile Java.ReactionDiffusion.simd and run
+ * with --add-modules jdk.incubator.vector (see VectorGrayScottKernel).
+ */
+public class ReactionDiffusionBenchmark {
+    // Exactness checks that did not hold; main exits with status 1 if any did not
+    private static int failures;
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int largeSize = args.length > 3 ? Integer.parseInt(args[3]) : 2048;
+        int settleSize = args.length > 4 ? Integer.parseInt(args[4]) : 128;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // Tiles are independent within a step, so any thread count must agree
+        int checkThreads = Math.max(4, cores);
+        ReactionDiffusionSystem single = createSystem(width, height, 1, GridStorage.FLAT_DOUBLE);
+        ReactionDiffusionSystem parallel = createSystem(width, height, checkThreads, GridStorage.FLAT_DOUBLE);
+        for (int s = 0; s < steps; s++) {
+            single.update();
+            parallel.update();
+        }
+        System.out.printf("1 vs %d threads after %d steps: max difference %.3e%n",
+                checkThreads, steps, maxDifference(single.getGrid(), parallel.getGrid()));
+
+        // Accuracy of each layout against the double[][] reference
+        ReactionDiffusionSystem reference = createSystem(width, height, cores, GridStorage.ARRAY);
+        ReactionDiffusionSystem flatDouble = createSystem(width, height, cores, GridStorage.FLAT_DOUBLE);
+        ReactionDiffusionSystem flatFloat = createSystem(width, height, cores, GridStorage.FLAT_FLOAT);
+        ReactionDiffusionSystem offHeap = createSystem(width, height, cores, GridStorage.OFF_HEAP);
+        for (int s = 1; s <= steps; s++) {
+            reference.update();
+            flatDouble.update();
+            flatFloat.update();
+            offHeap.update();
+            if (s % Math.max(1, steps / 4) == 0) {
+                System.out.printf("step %d vs %s: %s max difference %.3e, %s max difference %.3e, %s max difference %.3e%n",
+                        s, GridStorage.ARRAY,
+                        GridStorage.FLAT_DOUBLE, maxDifference(reference.getGrid(), flatDouble.getGrid()),
+                        GridStorage.FLAT_FLOAT, maxDifference(reference.getGrid(), flatFloat.getGrid()),
+                        GridStorage.OFF_HEAP, maxDifference(reference.getGrid(), offHeap.getGrid()));
+            }
+        }
+
+        // A mapped grid reopened without a checkpoint since the first, as
+        // after a kill, must carry on from its last completed pass; before
+        // the first it must not be taken for a saved grid
+        try {
+            Path file = Files.createTempFile("reaction-diffusion", ".grid");
+            ReactionDiffusionSystem mapped = new ReactionDiffusionSystem(OffHeapGrid.open(file, width, height), cores);
+            ReactionDiffusionSystem inMemory = createSystem(width, height, cores, GridStorage.FLAT_DOUBLE);
+            // Reset quiet tiles depend on when the tiles were last checked
+            mapped.setSkipQuietTiles(false);
+            inMemory.setSkipQuietTiles(false);
+            mapped.initialize();
+            mapped.addChemical(width / 4, height / 4);
+            mapped.addChemical(3 * width / 4, height / 3);
+            mapped.addChemical(width / 3, 3 * height / 4);
+            boolean resumedEarly = OffHeapGrid.open(file, width, height).isResumed();
+            mapped.checkpoint();
+            mapped.update(steps / 2 + 1);
+            inMemory.update(steps);
+
+            OffHeapGrid reopened = OffHeapGrid.open(file, width, height);
+            ReactionDiffusionSystem resumed = new ReactionDiffusionSystem(reopened, cores);
+            resumed.setSkipQuietTiles(false);
+            long resumedAt = resumed.getSteps();
+            resumed.update((int) (steps - resumedAt));
+            if (resumedEarly) {
+                failures++;
+            }
+            System.out.printf("mapped grid reopened before its first checkpoint: %s%n",
+                    resumedEarly ? "resumed (wrong)" : "started over");
+            System.out.printf("mapped grid reopened at step %d, after %d steps vs %s: max difference %.3e%n",
+                    resumedAt, resumed.getSteps(), GridStorage.FLAT_DOUBLE, exact(maxDifference(inMemory.getGrid(), reopened)));
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("mapped grid check skipped: " + e.getMessage());
+        }
+
+        // Blocked steps must give exactly what single steps give
+        for (GridStorage storage : new GridStorage[] {GridStorage.FLAT_DOUBLE, GridStorage.FLAT_FLOAT}) {
+            ReactionDiffusionSystem stepped = createSystem(width, height, cores, storage);
+            ReactionDiffusionSystem blocked = createSystem(width, height, cores, storage);
+            blocked.setBlockSteps(6);
+
+            // Quiet tiles are checked once per pass, so they would be reset at different steps
+            stepped.setSkipQuietTiles(false);
+            blocked.setSkipQuietTiles(false);
+            for (int s = 0; s < steps; s++) {
+                stepped.update();
+            }
+            blocked.update(steps);
+            System.out.printf("%s, blocks of %d vs single steps after %d steps: max difference %.3e%n",
+                    storage, blocked.getBlockSteps(), steps, exact(maxDifference(stepped.getGrid(), blocked.getGrid())));
+        }
+
+        // The SIMD kernel must round exactly like the scalar one
+        GrayScottKernel kernel = GrayScottKernel.best();
+        for (GridStorage storage : new GridStorage[] {GridStorage.FLAT_DOUBLE, GridStorage.FLAT_FLOAT}) {
+            ReactionDiffusionSystem scalar = createSystem(width, height, cores, storage);
+            ReactionDiffusionSystem vector = createSystem(width, height, cores, storage);
+            vector.setKernel(kernel);
+            scalar.update(steps);
+            vector.update(steps);
+            System.out.printf("%s, %s kernel vs scalar after %d steps: max difference %.3e%n",
+                    storage, kernel.getName(), steps, exact(maxDifference(scalar.getGrid(), vector.getGrid())));
+        }
+
+        for (GridStorage storage : GridStorage.values()) {
+            System.out.printf("%s: %.1f MB%n", storage,
+                    storage.create(width, height).getBytes() / (1024.0 * 1024.0));
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                System.out.printf("  %2d threads: %.1f steps/s%n",
+                        threads, stepsPerSecond(createSystem(width, height, threads, storage), steps));
+            }
+        }
+
+        // Gray-Scott through the stencil engine must round like the hand-written
+        // loop in double precision, with single and blocked steps alike
+        for (GridStorage storage : new GridStorage[] {GridStorage.FLAT_DOUBLE, GridStorage.FLAT_FLOAT, GridStorage.OFF_HEAP}) {
+            ReactionDiffusionSystem handWritten = createSystem(width, height, cores, storage);
+            ReactionDiffusionSystem engine = createModelSystem(width, height, cores, storage, grayScottModel(handWritten));
+            handWritten.update(steps);
+            engine.update(steps);
+            double difference = maxDifference(handWritten.getGrid(), engine.getGrid());
+            System.out.printf("%s, stencil engine %s vs scalar kernel after %d steps: max difference %.3e%n",
+                    storage, engine.getModel().getName(), steps,
+                    storage == GridStorage.FLAT_FLOAT ? difference : exact(difference));
+        }
+
+        // double[][] only steps Gray-Scott, so it must refuse a model instead of ignoring it
+        String toArray;
+        try {
+            createModelSystem(64, 64, 1, GridStorage.FLAT_DOUBLE, new FitzHughNagumoModel()).setStorage(GridStorage.ARRAY);
+            toArray = "accepted (wrong)";
+            failures++;
+        } catch (IllegalArgumentException e) {
+            toArray = "refused";
+        }
+        String onArray;
+        try {
+            createSystem(64, 64, 1, GridStorage.ARRAY).setModel(new FitzHughNagumoModel());
+            onArray = "accepted (wrong)";
+            failures++;
+        } catch (IllegalStateException e) {
+            onArray = "refused";
+        }
+        System.out.printf("%s storage with a model: switching %s, setting the model %s%n",
+                GridStorage.ARRAY, toArray, onArray);
+
+        // The engine's kernel trails the hand-written loop by around 10%, the
+        // cost of its separate Laplacian pass; each model class gets its own
+        // kernel class, so running another model in between must not slow
+        // Gray-Scott down further
+        ReactionDiffusionSystem handWritten = createSystem(width, height, 1, GridStorage.FLAT_DOUBLE);
+        System.out.printf("%s, scalar kernel, 1 thread: %.1f steps/s%n",
+                GridStorage.FLAT_DOUBLE, stepsPerSecond(handWritten, steps));
+        ReactionModel grayScott = grayScottModel(handWritten);
+        for (ReactionModel model : new ReactionModel[] {grayScott, new FitzHughNagumoModel(), grayScott}) {
+            ReactionDiffusionSystem system = createModelSystem(width, height, 1, GridStorage.FLAT_DOUBLE, model);
+            System.out.printf("%s, stencil engine %s, 1 thread: %.1f steps/s%n",
+                    GridStorage.FLAT_DOUBLE, model.getName(), stepsPerSecond(system, steps));
+        }
+
+        GrayScottKernel[] kernels = kernel == GrayScottKernel.scalar()
+                ? new GrayScottKernel[] {kernel}
+                : new GrayScottKernel[] {GrayScottKernel.scalar(), kernel};
+        for (GridStorage storage : new GridStorage[] {GridStorage.FLAT_DOUBLE, GridStorage.FLAT_FLOAT}) {
+            for (GrayScottKernel k : kernels) {
+                ReactionDiffusionSystem system = createSystem(width, height, 1, storage);
+                system.setKernel(k);
+                System.out.printf("%s, %s kernel, 1 thread: %.1f steps/s%n",
+                        storage, k.getName(), stepsPerSecond(system, steps));
+            }
+        }
+
+        // Per-pixel setRGB against writing the raster through the colormap table
+        ReactionDiffusionSystem frameSystem = createSystem(width, height, cores, GridStorage.FLAT_DOUBLE);
+        frameSystem.update(steps);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] colors = Colormap.GRAYSCALE.getTable();
+        int frames = Math.max(10, steps / 4);
+        System.out.printf("frame conversion, setRGB: %.2f ms, raster with colormap table: %.2f ms%n",
+                frameMillis(frames, () -> drawWithSetRgb(frameSystem.getGrid(), image)),
+                frameMillis(frames, () -> frameSystem.render(pixels, colors)));
+
+        // Brush strokes queued from another thread while the solver steps:
+        // the producer's cost per drag, and the solver's time to paint them
+        ReactionDiffusionSystem painted = createSystem(width, height, cores, GridStorage.FLAT_DOUBLE);
+        BrushQueue brushes = new BrushQueue();
+        int drags = 200_000;
+        long[] produceNanos = new long[1];
+        Thread mouse = new Thread(() -> {
+            long start = System.nanoTime();
+            brushes.press(0, height / 2);
+            for (int i = 1; i < drags; i++) {
+                // A zigzag across the field, as a fast drag would give
+                brushes.drag(i % width, height / 2 + (int) (height / 4 * Math.sin(i * 0.01)));
+            }
+            produceNanos[0] = System.nanoTime() - start;
+        });
+        mouse.start();
+        long paintNanos = 0;
+        int segments = 0;
+        int passes = 0;
+        while (mouse.isAlive() || !brushes.isEmpty()) {
+            long start = System.nanoTime();
+            segments += brushes.drain(painted);
+            paintNanos += System.nanoTime() - start;
+            painted.update(painted.getBlockSteps());
+            passes++;
+        }
+        try {
+            mouse.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.printf("brush queue: %d drags at %.0f ns each, %d segments painted in %.1f ms over %d passes "
+                + "(drags made while the ring was full are joined into the next segment)%n",
+                drags, (double) produceNanos[0] / drags, segments, paintNanos / 1e6, passes);
+
+        // Coordinates are not limited to 16 bits, as they once were
+        ReactionDiffusionSystem wide = new ReactionDiffusionSystem(40_000, 16, 1, GridStorage.FLAT_FLOAT);
+        wide.clear();
+        BrushQueue far = new BrushQueue();
+        far.press(39_990, 8);
+        far.drain(wide);
+        System.out.printf("brush at x=39990 on a 40000-wide grid: B there %.1f, at x=32767 %.1f%n",
+                wide.getGrid().getB(39_990, 8), wide.getGrid().getB(32_767, 8));
+
+        // Blocking pays off once the fields no longer fit in cache
+        int largeSteps = Math.max(8, steps / 10);
+        for (GridStorage storage : new GridStorage[] {GridStorage.FLAT_DOUBLE, GridStorage.FLAT_FLOAT}) {
+            for (int block : new int[] {1, 2, 4, 8}) {
+                ReactionDiffusionSystem system = createSystem(largeSize, largeSize, cores, storage);
+                system.setBlockSteps(block);
+                System.out.printf("%s %dx%d, blocks of %d: %.1f steps/s%n",
+                        storage, largeSize, largeSize, block, stepsPerSecond(system, largeSteps));
+            }
+        }
+
+        // A view of the large field costs in proportion to the view's pixels,
+        // zoomed out (through the pyramid), 1:1 or zoomed in
+        ReactionDiffusionSystem field = createSystem(largeSize, largeSize, cores, GridStorage.FLAT_DOUBLE);
+        field.setSkipQuietTiles(false);
+        field.update(largeSteps);
+        int[] whole = new int[largeSize * largeSize];
+        int[] view = new int[width * height];
+        Viewport fit = Viewport.fit(largeSize, largeSize, width, height);
+        Viewport actual = new Viewport((largeSize - width) / 2, (largeSize - height) / 2, 1);
+        Viewport zoomed = actual.zoom(0.25, width / 2.0, height / 2.0, 1);
+        System.out.printf("%dx%d field: whole grid %.2f ms; %dx%d view zoomed out %.2f ms, 1:1 %.2f ms, "
+                        + "zoomed in %.2f ms%n", largeSize, largeSize,
+                frameMillis(frames, () -> field.render(whole, colors)), width, height,
+                frameMillis(frames, () -> field.renderView(view, width, height, fit, colors)),
+                frameMillis(frames, () -> field.renderView(view, width, height, actual, colors)),
+                frameMillis(frames, () -> field.renderView(view, width, height, zoomed, colors)));
+
+        // Reading the grid directly must draw the same pixels as the whole-grid render
+        field.renderView(view, width, height, new Viewport(0, 0, 1), colors);
+        int differing = 0;
+        for (int y = 0; y < Math.min(height, largeSize); y++) {
+            for (int x = 0; x < Math.min(width, largeSize); x++) {
+                if (view[y * width + x] != whole[y * largeSize + x]) {
+                    differing++;
+                }
+            }
+        }
+        System.out.printf("1:1 view vs whole grid: %d differing pixels; pyramid vs block means: max difference %.3e%n",
+                differing, pyramidError(field.getGrid()));
+
+        // While every tile changes every step, the zoomed-out view refreshes
+        // as many tiles as its budget allows and leaves the rest for later
+        long viewNanos = 0;
+        boolean complete = true;
+        for (int f = 0; f < frames; f++) {
+            field.update(1);
+            long start = System.nanoTime();
+            complete &= field.renderView(view, width, height, fit, colors);
+            viewNanos += System.nanoTime() - start;
+        }
+        System.out.printf("zoomed-out view while stepping every tile: %.2f ms per frame, %s, %d of %d tiles stale%n",
+                viewNanos / 1e6 / frames, complete ? "every frame complete" : "refreshed progressively",
+                field.getStaleTiles(), field.getTileCount());
+
+        // Skipping quiet tiles stays within the quiet threshold of stepping
+        // every tile, and costs time in proportion to the active area
+        ReactionDiffusionSystem everyTile = createSystem(largeSize, largeSize, cores, GridStorage.FLAT_DOUBLE);
+        ReactionDiffusionSystem activeTiles = createSystem(largeSize, largeSize, cores, GridStorage.FLAT_DOUBLE);
+        everyTile.setSkipQuietTiles(false);
+        System.out.printf("%dx%d, every tile: %.1f steps/s%n",
+                largeSize, largeSize, stepsPerSecond(everyTile, largeSteps));
+        System.out.printf("%dx%d, quiet tiles skipped: %.1f steps/s (%d of %d tiles stepped)%n",
+                largeSize, largeSize, stepsPerSecond(activeTiles, largeSteps),
+                activeTiles.getSteppedTiles(), activeTiles.getTileCount());
+        everyTile.update(steps);
+        activeTiles.update(steps);
+        System.out.printf("quiet tiles skipped vs every tile after %d more steps: max difference %.3e%n",
+                steps, maxDifference(everyTile.getGrid(), activeTiles.getGrid()));
+
+        // The FFT must match the definition, for power-of-two and other lengths
+        for (int n : new int[] {256, 600}) {
+            System.out.printf("FFT of length %d vs direct DFT: max difference %.3e%n", n, fftError(n));
+        }
+
+        // Time to settle, and the settled pattern, of each integrator
+        ReactionDiffusionSystem explicit = createSettleSystem(settleSize, cores);
+        ReactionDiffusionSystem spectral = createSettleSystem(settleSize, cores);
+        spectral.setIntegrator(Integrator.SPECTRAL);
+        settle(explicit, GrayScottKernel.STEP_FACTOR);
+        settle(spectral, spectral.getSpectralTimeStep());
+
+        if (failures > 0) {
+            System.err.println(failures + " exactness checks failed");
+            System.exit(1);
+        }
+    }
+
+    // A difference that must be exactly zero, counted as a failure otherwise
+    private static double exact(double difference) {
+        if (difference != 0) {
+            failures++;
+        }
+        return difference;
+    }
+
+    // Largest difference between each pyramid cell and the mean of its block of whole cells
+    private static double pyramidError(ReactionDiffusionGrid grid) {
+        int tileSize = 64;
+        MipPyramid pyramid = new MipPyramid(grid.getWidth(), grid.getHeight(), tileSize);
+        for (int y = 0; y < grid.getHeight(); y += tileSize) {
+            for (int x = 0; x < grid.getWidth(); x += tileSize) {
+                pyramid.refreshTile(grid, x, y, Math.min(grid.getWidth(), x + tileSize),
+                        Math.min(grid.getHeight(), y + tileSize));
+            }
+        }
+        pyramid.refreshTop();
+
+        double max = 0;
+        for (int level = 1; level < pyramid.getLevelCount(); level++) {
+            int size = 1 << level;
+            char[] cells = pyramid.getLevel(level);
+            for (int cy = 0; (cy + 1) * size <= grid.getHeight(); cy++) {
+                for (int cx = 0; (cx + 1) * size <= grid.getWidth(); cx++) {
+                    double sum = 0;
+                    for (int y = cy * size; y < (cy + 1) * size; y++) {
+                        for (int x = cx * size; x < (cx + 1) * size; x++) {
+                            sum += grid.getB(x, y);
+                        }
+                    }
+                    double value = cells[cy * pyramid.getLevelWidth(level) + cx] / (double) Character.MAX_VALUE;
+                    max = Math.max(max, Math.abs(value - sum / (size * size)));
+                }
+            }
+        }
+        return max;
+    }
+
+    // Largest error of the forward transform of random data against the O(n^2) sum
+    private static double fftError(int n) {
+        Random random = new Random(n);
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextDouble();
+            im[i] = random.nextDouble();
+        }
+        double[] outRe = re.clone();
+        double[] outIm = im.clone();
+        new Fft(n).transform(outRe, outIm, 0, false);
+
+        double max = 0;
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = -2 * Math.PI * ((long) j * k % n) / n;
+                sumRe += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+                sumIm += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+            }
+            max = Math.max(max, Math.hypot(sumRe - outRe[k], sumIm - outIm[k]));
+        }
+        return max;
+    }
+
+    // A square field seeded with spots all over, so patterns form everywhere at once
+    private static ReactionDiffusionSystem createSettleSystem(int size, int threads) {
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(size, size, threads, GridStorage.FLAT_DOUBLE);
+        system.initialize();
+        for (int y = 16; y < size; y += 48) {
+            for (int x = 16 + (y / 48 % 2) * 24; x < size; x += 48) {
+                system.addChemical(x, y);
+            }
+        }
+        return system;
+    }
+
+    /**
+     * Step until B changes by less than 1e-5 per unit of time on average
+     * (or for at most 40000 time units), then report the time taken and
+     * the pattern inside a 32-cell margin.
+     */
+    private static void settle(ReactionDiffusionSystem system, double stepTime) {
+        int size = system.getWidth();
+        double[] previous = new double[size * size];
+        int chunk = (int) Math.round(100 / stepTime);
+        double time = 0;
+        double change;
+        long start = System.nanoTime();
+        do {
+            system.update(chunk);
+            time += chunk * stepTime;
+            change = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    double b = system.getGrid().getB(x, y);
+                    change += Math.abs(b - previous[y * size + x]);
+                    previous[y * size + x] = b;
+                }
+            }
+            change /= (double) size * size * chunk * stepTime;
+        } while (change >= 1e-5 && time < 40000);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double sum = 0;
+        int patterned = 0;
+        int cells = 0;
+        for (int y = 32; y < size - 32; y++) {
+            for (int x = 32; x < size - 32; x++) {
+                double b = previous[y * size + x];
+                sum += b;
+                patterned += b > 0.2 ? 1 : 0;
+                cells++;
+            }
+        }
+        System.out.printf("%s, dt %.1f, %dx%d: settled at t=%.0f in %.1f s; interior mean B %.4f, B > 0.2 on %.1f%%%n",
+                system.getIntegrator(), stepTime, size, size, time, seconds,
+                sum / cells, 100.0 * patterned / cells);
+    }
+
+    // A system seeded with the default square and a few extra spots
+    static ReactionDiffusionSystem createSystem(int width, int height, int threads, GridStorage storage) {
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(width, height, threads, storage);
+        system.initialize();
+        system.addChemical(width / 4, height / 4);
+        system.addChemical(3 * width / 4, height / 3);
+        system.addChemical(width / 3, 3 * height / 4);
+        return system;
+    }
+
+    // The same, stepping a model through the stencil engine
+    static ReactionDiffusionSystem createModelSystem(int width, int height, int threads, GridStorage storage,
+                                                     ReactionModel model) {
+        ReactionDiffusionSystem system = new ReactionDiffusionSystem(width, height, threads, storage);
+        system.setModel(model);
+        system.initialize();
+        system.addChemical(width / 4, height / 4);
+        system.addChemical(3 * width / 4, height / 3);
+        system.addChemical(width / 3, 3 * height / 4);
+        return system;
+    }
+
+    // Gray-Scott as an engine model, with a system's parameters
+    private static ReactionModel grayScottModel(ReactionDiffusionSystem system) {
+        return new GrayScottModel(system.getDiffusionA(), system.getDiffusionB(), system.getFeed(), system.getKill());
+    }
+
+    // Largest difference of either chemical between two grids of the same size
+    static double maxDifference(ReactionDiffusionGrid a, ReactionDiffusionGrid b) {
+        double max = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                max = Math.max(max, Math.abs(a.getA(x, y) - b.getA(x, y)));
+                max = Math.max(max, Math.abs(a.getB(x, y) - b.getB(x, y)));
+            }
+        }
+        return max;
+    }
+
+    // The conversion the panel used before rendering went through the raster
+    private static void drawWithSetRgb(ReactionDiffusionGrid grid, BufferedImage image) {
+        for (int x = 0; x < grid.getWidth(); x++) {
+            for (int y = 0; y < grid.getHeight(); y++) {
+                int c = Math.max(0, Math.min(255, (int) ((1 - grid.getB(x, y)) * 255)));
+                image.setRGB(x, y, (c << 16) | (c << 8) | c);
+            }
+        }
+    }
+
+    private static double frameMillis(int frames, Runnable convert) {
+        // Warm up the JIT before measuring
+        for (int f = 0; f < frames; f++) {
+            convert.run();
+        }
+
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            convert.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / frames;
+    }
+
+    private static double stepsPerSecond(ReactionDiffusionSystem system, int steps) {
+        // Warm up the JIT before measuring
+        system.update(Math.min(steps, 20));
+
+        long start = System.nanoTime();
+        system.update(steps);
+        return steps * 1e9 / (System.nanoTime() - start);
+    }
+}
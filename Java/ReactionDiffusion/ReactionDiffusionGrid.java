@@ -0,0 +1,159 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Storage for the two chemical fields of a reaction-diffusion system,
+ * together with the Gray-Scott step that reads the current fields and
+ * writes the next ones. Each implementation runs the step loop on its own
+ * arrays; the flat grids hand whole rows to a GrayScottKernel, so the
+ * per-cell loop never goes through an interface.
+ *
+ * Neighbors outside the grid are the boundary values, the Gray-Scott
+ * steady state A=1, B=0 unless setBoundary picks another model's rest
+ * state. Tiles may be skipped while they stay at the boundary values;
+ * ReactionDiffusionSystem decides which using nextTileNearSteady and resets
+ * skipped tiles with fillNextTile.
+ */
+abstract class ReactionDiffusionGrid {
+    // Stencil weights of the 3x3 Laplacian
+    static final double EDGE_WEIGHT = GrayScottKernel.EDGE_WEIGHT;
+    static final double CORNER_WEIGHT = GrayScottKernel.CORNER_WEIGHT;
+
+    // Fraction of the computed change applied per step
+    static final double STEP_FACTOR = GrayScottKernel.STEP_FACTOR;
+
+    protected final int width;
+    protected final int height;
+
+    // Values of the cells outside the grid
+    protected double boundaryA = 1.0;
+    protected double boundaryB = 0.0;
+
+    // Steps the current fields have been advanced since they were set up
+    private long steps;
+
+    protected ReactionDiffusionGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public abstract double getA(int x, int y);
+
+    public abstract double getB(int x, int y);
+
+    // Copy B of count cells of row y, starting at fromX, into out at offset
+    public void getRowB(int y, int fromX, int count, double[] out, int offset) {
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = getB(fromX + i, y);
+        }
+    }
+
+    // Set both chemicals of a cell in the current fields
+    public abstract void set(int x, int y, double a, double b);
+
+    // Set every cell of both the current and the next fields
+    public abstract void fill(double a, double b);
+
+    /**
+     * Compute the next values of the cells in [startX, endX) x [startY, endY)
+     * from the current fields. Tiles may run in parallel.
+     */
+    public abstract void updateTile(int startX, int startY, int endX, int endY,
+                                    double dA, double dB, double feed, double kill);
+
+    // Set the values seen outside the grid, such as a model's rest state
+    public void setBoundary(double a, double b) {
+        boundaryA = a;
+        boundaryB = b;
+    }
+
+    public double getBoundaryA() {
+        return boundaryA;
+    }
+
+    public double getBoundaryB() {
+        return boundaryB;
+    }
+
+    // Row kernel used by grids that step whole rows; others ignore it
+    public void setKernel(GrayScottKernel kernel) {
+    }
+
+    // Whether updateTileBlock is supported
+    public boolean canBlockSteps() {
+        return false;
+    }
+
+    /**
+     * Advance the cells of a tile by several steps in one pass and write
+     * the result to the next fields, as if updateTile and swap had been
+     * called that many times. Tiles may run in parallel.
+     */
+    public void updateTileBlock(int startX, int startY, int endX, int endY, int steps,
+                                double dA, double dB, double feed, double kill) {
+        throw new UnsupportedOperationException("Blocked steps are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Whether every cell of the tile in the next fields, just written by
+     * updateTile or updateTileBlock, is within epsilon of the boundary values
+     */
+    public abstract boolean nextTileNearSteady(int startX, int startY, int endX, int endY, double epsilon);
+
+    // Set the cells of a tile in the next fields. Tiles may run in parallel.
+    public abstract void fillNextTile(int startX, int startY, int endX, int endY, double a, double b);
+
+    // Make the next fields current once every tile is done
+    public abstract void swap();
+
+    // Swap after a pass that advanced the fields by the given number of steps
+    public void swap(int steps) {
+        this.steps += steps;
+        swap();
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public void setSteps(long steps) {
+        this.steps = steps;
+    }
+
+    // Make the current fields durable; only file-backed grids have work to do
+    public void checkpoint() {
+    }
+
+    // Memory used by the four fields
+    public abstract long getBytes();
+
+    /**
+     * Write the color of every cell in rows [fromRow, toRow) into a
+     * row-major pixel array of width x height, looking B up in a colormap
+     * table. Bands of rows may be converted in parallel.
+     */
+    public void toPixels(int[] pixels, int[] colors, int fromRow, int toRow) {
+        for (int y = fromRow; y < toRow; y++) {
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[out + x] = colors[Colormap.index(getB(x, y))];
+            }
+        }
+    }
+
+    // Copy every cell from another grid, for switching storage at run time
+    public void copyFrom(ReactionDiffusionGrid other) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, other.getA(x, y), other.getB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package Java.ReactionDiffusion;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the reaction-diffusion solver on its own thread, so the Swing
+ * thread only draws finished frames. Either a fixed number of steps is
+ * run per displayed frame, or (with 0 steps per frame) the solver runs as
+ * many steps as fit in each frame interval.
+ *
+ * Frames are double-buffered: the solver thread converts the part of the
+ * grid in the viewport into the back image (writing its pixel array
+ * directly, in parallel bands of rows) and then swaps it with the front
+ * one, which is all the panel ever draws. The images are the size of the
+ * view, however large the grid. The swap and the drawing hold the same
+ * lock, so an image is never written while it is on screen.
+ *
+ * Everything that changes the system from the UI (reset, parameters) is
+ * queued and run on the solver thread between steps. Brush strokes go
+ * through a BrushQueue instead and are painted once per frame, before
+ * the steps, so heavy mouse input neither allocates nor cuts short the
+ * bursts of steps in the unlimited mode.
+ */
+class ReactionDiffusionLoop implements Runnable {
+    private final ReactionDiffusionSystem system;
+    private final ConcurrentLinkedQueue<Runnable> pendingActions = new ConcurrentLinkedQueue<>();
+    private final BrushQueue brushes = new BrushQueue();
+    private final long frameNanos;
+    private Thread thread;
+    private volatile boolean running;
+
+    // Frame images; back is only touched by the solver thread
+    private final Object frameLock = new Object();
+    private BufferedImage front;
+    private BufferedImage back;
+
+    // Settings written by the UI thread
+    private volatile int stepsPerFrame = 1;
+    private volatile boolean paused;
+    private volatile Colormap colormap = Colormap.GRAYSCALE;
+    private volatile Viewport viewport;
+
+    // Set when the frame must be redrawn even though the grid did not change
+    private volatile boolean renderRequested;
+
+    // Results read by the UI thread
+    private volatile int stepsPerSecond;
+    private volatile double convertMillis;
+
+    public ReactionDiffusionLoop(ReactionDiffusionSystem system, double frameRate) {
+        this(system, frameRate, system.getWidth(), system.getHeight());
+    }
+
+    // Frames of viewWidth x viewHeight, starting with the whole grid in view
+    public ReactionDiffusionLoop(ReactionDiffusionSystem system, double frameRate, int viewWidth, int viewHeight) {
+        this.system = system;
+        this.frameNanos = (long) (1e9 / frameRate);
+        viewport = Viewport.fit(system.getWidth(), system.getHeight(), viewWidth, viewHeight);
+        front = new BufferedImage(viewWidth, viewHeight, BufferedImage.TYPE_INT_RGB);
+        back = new BufferedImage(viewWidth, viewHeight, BufferedImage.TYPE_INT_RGB);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "reaction-diffusion-solver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // Steps per displayed frame; 0 runs as many as fit in a frame
+    public void setStepsPerFrame(int steps) {
+        this.stepsPerFrame = Math.max(0, steps);
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public void setColormap(Colormap colormap) {
+        this.colormap = colormap;
+        requestRender();
+    }
+
+    // Show another part of the grid from the next frame on
+    public void setViewport(Viewport viewport) {
+        this.viewport = viewport;
+        requestRender();
+    }
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    // Redraw the frame soon, waking the solver thread if it is waiting
+    public void requestRender() {
+        renderRequested = true;
+        LockSupport.unpark(thread);
+    }
+
+    // Run an action on the solver thread before the next step
+    public void invokeLater(Runnable action) {
+        pendingActions.add(action);
+        LockSupport.unpark(thread);
+    }
+
+    // Start a brush stroke at (x, y) in grid coordinates
+    public void pressBrush(int x, int y) {
+        brushes.press(x, y);
+        wakeIfPaused();
+    }
+
+    // Continue the brush stroke to (x, y)
+    public void dragBrush(int x, int y) {
+        brushes.drag(x, y);
+        wakeIfPaused();
+    }
+
+    // While running, strokes wait for the next frame; while paused, show them now
+    private void wakeIfPaused() {
+        if (paused) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Measured solver steps per second, updated once a second
+    public int getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    // Smoothed time to convert the grid into a frame image
+    public double getConvertMillis() {
+        return convertMillis;
+    }
+
+    // Draw the latest finished frame
+    public void draw(Graphics g) {
+        synchronized (frameLock) {
+            g.drawImage(front, 0, 0, null);
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+        long rateStart = nextFrame;
+        int rateSteps = 0;
+        boolean changed = true;
+
+        while (running) {
+            changed |= runPendingActions();
+            changed |= brushes.drain(system) > 0;
+            if (renderRequested) {
+                // Cleared before rendering, so a later request is not lost
+                renderRequested = false;
+                changed = true;
+            }
+
+            if (!paused) {
+                int steps = stepsPerFrame;
+                if (steps > 0) {
+                    system.update(steps);
+                    rateSteps += steps;
+                } else {
+                    // Keep stepping until the frame is due or the UI wants something
+                    do {
+                        system.update(system.getBlockSteps());
+                        rateSteps += system.getBlockSteps();
+                    } while (System.nanoTime() < nextFrame && pendingActions.isEmpty());
+                }
+                changed = true;
+            }
+
+            // A frame with parts of the view still to catch up is redrawn next time
+            if (changed) {
+                changed = !renderFrame();
+            }
+
+            long now = System.nanoTime();
+            if (now - rateStart >= 1_000_000_000L) {
+                stepsPerSecond = (int) Math.round(rateSteps * 1e9 / (now - rateStart));
+                rateStart = now;
+                rateSteps = 0;
+            }
+
+            // Wait for the next frame, or skip ahead if we fell behind. In
+            // the unlimited mode the steps themselves fill the interval.
+            nextFrame += frameNanos;
+            if (nextFrame < now) {
+                nextFrame = now;
+            }
+            boolean wait = paused || stepsPerFrame > 0;
+            while (wait && running && System.nanoTime() < nextFrame && pendingActions.isEmpty()
+                    && !renderRequested && !(paused && !brushes.isEmpty())) {
+                LockSupport.parkNanos(nextFrame - System.nanoTime());
+            }
+        }
+    }
+
+    private boolean runPendingActions() {
+        boolean ran = false;
+        Runnable action;
+        while ((action = pendingActions.poll()) != null) {
+            action.run();
+            ran = true;
+        }
+        return ran;
+    }
+
+    // Convert the grid into the back image, then make it the front one; false if it is not yet complete
+    private boolean renderFrame() {
+        long start = System.nanoTime();
+        int[] pixels = ((DataBufferInt) back.getRaster().getDataBuffer()).getData();
+        boolean complete = system.renderView(pixels, back.getWidth(), back.getHeight(), viewport, colormap.getTable());
+        convertMillis += ((System.nanoTime() - start) / 1e6 - convertMillis) * 0.1;
+
+        synchronized (frameLock) {
+            BufferedImage temp = front;
+            front = back;
+            back = temp;
+        }
+        return complete;
+    }
+}
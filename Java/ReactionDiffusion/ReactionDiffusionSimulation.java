@@ -5,10 +5,6 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Reaction-Diffusion System (Turing Patterns) using Java AWT
@@ -18,10 +14,22 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
     private ReactionDiffusionPanel panel;
     private JSlider feedSlider;
     private JSlider killSlider;
+    private JSlider stepsSlider;
+    private JCheckBox unlimitedCheckbox;
+    private JLabel stepsLabel;
     private JLabel fpsLabel;
     private boolean paused = false;
     
     public ReactionDiffusionSimulation() {
+        this(ReactionDiffusionPanel.WIDTH, ReactionDiffusionPanel.HEIGHT, GridStorage.FLAT_DOUBLE);
+    }
+    
+    /**
+     * Simulate a grid of any size; one larger than the window is shown
+     * zoomed out and can be zoomed with the wheel and dragged with the
+     * right mouse button
+     */
+    public ReactionDiffusionSimulation(int gridWidth, int gridHeight, GridStorage storage) {
         setTitle("Reaction-Diffusion System (Turing Patterns)");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
@@ -45,6 +53,23 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
         killPanel.add(killSlider, BorderLayout.CENTER);
         controlPanel.add(killPanel);
         
+        // Solver steps per displayed frame, or as many as the solver can run
+        JPanel stepsPanel = new JPanel(new BorderLayout());
+        stepsPanel.add(new JLabel("Steps/Frame:"), BorderLayout.WEST);
+        stepsSlider = new JSlider(JSlider.HORIZONTAL, 1, 32, 1);
+        stepsSlider.addChangeListener(this);
+        stepsPanel.add(stepsSlider, BorderLayout.CENTER);
+        unlimitedCheckbox = new JCheckBox("Max");
+        unlimitedCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepsSlider.setEnabled(!unlimitedCheckbox.isSelected());
+                panel.setStepsPerFrame(unlimitedCheckbox.isSelected() ? 0 : stepsSlider.getValue());
+            }
+        });
+        stepsPanel.add(unlimitedCheckbox, BorderLayout.EAST);
+        controlPanel.add(stepsPanel);
+        
         // Create buttons
         JPanel buttonPanel = new JPanel(new FlowLayout());
         
@@ -67,14 +92,85 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
         });
         buttonPanel.add(pauseButton);
         
+        JButton fitButton = new JButton("Fit View");
+        fitButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.fitView();
+            }
+        });
+        buttonPanel.add(fitButton);
+        
+        // Skip tiles the pattern has not reached
+        JCheckBox quietCheckbox = new JCheckBox("Skip Quiet Tiles", true);
+        quietCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setSkipQuietTiles(quietCheckbox.isSelected());
+            }
+        });
+        buttonPanel.add(quietCheckbox);
+        
         controlPanel.add(buttonPanel);
         
-        // FPS display
-        fpsLabel = new JLabel("FPS: 0");
+        // Grid memory layout selection
+        JPanel storagePanel = new JPanel(new BorderLayout());
+        storagePanel.add(new JLabel("Grid:"), BorderLayout.WEST);
+        JComboBox<GridStorage> storageBox = new JComboBox<>(GridStorage.values());
+        storageBox.setSelectedItem(storage);
+        storageBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setStorage((GridStorage) storageBox.getSelectedItem());
+            }
+        });
+        storagePanel.add(storageBox, BorderLayout.CENTER);
+        
+        // Row kernel selection (SIMD when the Vector API is available)
+        JCheckBox simdCheckbox = new JCheckBox("SIMD (" + GrayScottKernel.best().getName() + ")");
+        simdCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setKernel(simdCheckbox.isSelected() ? GrayScottKernel.best() : GrayScottKernel.scalar());
+            }
+        });
+        storagePanel.add(simdCheckbox, BorderLayout.EAST);
+        controlPanel.add(storagePanel);
+        
+        // Time integration scheme
+        JPanel solverPanel = new JPanel(new BorderLayout());
+        solverPanel.add(new JLabel("Solver:"), BorderLayout.WEST);
+        JComboBox<Integrator> solverBox = new JComboBox<>(Integrator.values());
+        solverBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setIntegrator((Integrator) solverBox.getSelectedItem());
+            }
+        });
+        solverPanel.add(solverBox, BorderLayout.CENTER);
+        controlPanel.add(solverPanel);
+        
+        // Palette for chemical B
+        JPanel colorPanel = new JPanel(new BorderLayout());
+        colorPanel.add(new JLabel("Colors:"), BorderLayout.WEST);
+        JComboBox<Colormap> colorBox = new JComboBox<>(Colormap.values());
+        colorBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setColormap((Colormap) colorBox.getSelectedItem());
+            }
+        });
+        colorPanel.add(colorBox, BorderLayout.CENTER);
+        controlPanel.add(colorPanel);
+        
+        // Solver and display rates, measured separately
+        stepsLabel = new JLabel("Sim: 0 steps/s");
+        controlPanel.add(stepsLabel);
+        fpsLabel = new JLabel("Render: 0 FPS");
         controlPanel.add(fpsLabel);
         
         // Create simulation panel
-        panel = new ReactionDiffusionPanel(this);
+        panel = new ReactionDiffusionPanel(this, gridWidth, gridHeight, storage);
         
         // Add components to frame
         add(controlPanel, BorderLayout.SOUTH);
@@ -91,114 +187,131 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
         double feed = feedSlider.getValue() / 1000.0;
         double kill = killSlider.getValue() / 1000.0;
         panel.setParameters(feed, kill);
+        if (!unlimitedCheckbox.isSelected()) {
+            panel.setStepsPerFrame(stepsSlider.getValue());
+        }
     }
     
-    public void updateFPS(int fps) {
-        fpsLabel.setText("FPS: " + fps);
+    public void updateRates(int stepsPerSecond, int steppedTiles, int tileCount, int fps, double convertMillis) {
+        stepsLabel.setText("Sim: " + stepsPerSecond + " steps/s (" + steppedTiles + " of " + tileCount + " tiles)");
+        fpsLabel.setText(String.format("Render: %d FPS (convert %.2f ms)", fps, convertMillis));
     }
     
+    // Usage: ReactionDiffusionSimulation [grid width] [grid height] [ARRAY|FLAT_DOUBLE|FLAT_FLOAT|OFF_HEAP]
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new ReactionDiffusionSimulation());
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : ReactionDiffusionPanel.WIDTH;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : ReactionDiffusionPanel.HEIGHT;
+        GridStorage storage = args.length > 2 ? GridStorage.valueOf(args[2]) : GridStorage.FLAT_DOUBLE;
+        SwingUtilities.invokeLater(() -> new ReactionDiffusionSimulation(width, height, storage));
     }
     
     /**
      * Inner class for the panel where the simulation takes place
      */
-    private class ReactionDiffusionPanel extends JPanel implements MouseListener, MouseMotionListener {
+    private class ReactionDiffusionPanel extends JPanel
+            implements MouseListener, MouseMotionListener, MouseWheelListener {
         private static final int WIDTH = 800;
         private static final int HEIGHT = 600;
+        private static final double FRAME_RATE = 30;
         
         private ReactionDiffusionSystem system;
+        private ReactionDiffusionLoop simulation;
+        
+        // Part of the grid in view, the furthest it may zoom out, and the
+        // last point of a pan in progress
+        private Viewport viewport;
+        private final double maxScale;
+        private int panX;
+        private int panY;
         private Timer timer;
-        private BufferedImage image;
         private int frameCount = 0;
         private long lastFpsTime = 0;
         private ReactionDiffusionSimulation parent;
         
-        public ReactionDiffusionPanel(ReactionDiffusionSimulation parent) {
+        public ReactionDiffusionPanel(ReactionDiffusionSimulation parent, int gridWidth, int gridHeight,
+                                      GridStorage storage) {
             this.parent = parent;
             setPreferredSize(new Dimension(WIDTH, HEIGHT));
             setBackground(Color.BLACK);
             
             // Initialize the system
-            system = new ReactionDiffusionSystem(WIDTH, HEIGHT);
+            system = new ReactionDiffusionSystem(gridWidth, gridHeight,
+                    Runtime.getRuntime().availableProcessors(), storage);
             system.initialize();
             
-            // Create image for display
-            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-            
             // Add mouse listeners
             addMouseListener(this);
             addMouseMotionListener(this);
+            addMouseWheelListener(this);
+            
+            // Run the solver on its own thread
+            simulation = new ReactionDiffusionLoop(system, FRAME_RATE, WIDTH, HEIGHT);
+            viewport = simulation.getViewport();
+            maxScale = 2 * viewport.getScale();
+            simulation.start();
             
-            // Animation timer (target 30 FPS)
+            // Repaint timer (target 30 FPS); only draws finished frames
             timer = new Timer(33, new ActionListener() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    update();
                     repaint();
-                    
-                    // Calculate FPS
-                    frameCount++;
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastFpsTime > 1000) {
-                        parent.updateFPS(frameCount);
-                        frameCount = 0;
-                        lastFpsTime = currentTime;
-                    }
                 }
             });
             timer.start();
         }
         
         public void resetSystem() {
-            system.initialize();
+            simulation.invokeLater(() -> system.initialize());
         }
         
         public void setPaused(boolean paused) {
-            if (paused) {
-                if (timer.isRunning()) {
-                    timer.stop();
-                }
-            } else {
-                if (!timer.isRunning()) {
-                    timer.start();
-                }
-            }
+            simulation.setPaused(paused);
         }
         
         public void setParameters(double feed, double kill) {
-            system.setParameters(feed, kill);
+            simulation.invokeLater(() -> system.setParameters(feed, kill));
         }
         
-        private void update() {
-            system.update();
-            updateImage();
+        public void setStorage(GridStorage storage) {
+            simulation.invokeLater(() -> {
+                // A layout that cannot run the current model is not switched to
+                if (system.canUseStorage(storage)) {
+                    system.setStorage(storage);
+                }
+            });
         }
         
-        private void updateImage() {
-            // Transfer system state to the image for display
-            double[][] gridB = system.getGridB();
-            
-            for (int i = 0; i < WIDTH; i++) {
-                for (int j = 0; j < HEIGHT; j++) {
-                    // Map the chemical B concentration to a grayscale value
-                    int color = (int)((1 - gridB[i][j]) * 255);
-                    color = Math.max(0, Math.min(255, color));
-                    
-                    // Create RGB color
-                    int rgb = (color << 16) | (color << 8) | color;
-                    image.setRGB(i, j, rgb);
-                }
-            }
+        public void setKernel(GrayScottKernel kernel) {
+            simulation.invokeLater(() -> system.setKernel(kernel));
+        }
+        
+        public void setIntegrator(Integrator integrator) {
+            simulation.invokeLater(() -> system.setIntegrator(integrator));
+        }
+        
+        public void setSkipQuietTiles(boolean skip) {
+            simulation.invokeLater(() -> system.setSkipQuietTiles(skip));
+        }
+        
+        public void setColormap(Colormap colormap) {
+            simulation.setColormap(colormap);
+        }
+        
+        public void setStepsPerFrame(int steps) {
+            simulation.setStepsPerFrame(steps);
+        }
+        
+        public void fitView() {
+            viewport = Viewport.fit(system.getWidth(), system.getHeight(), WIDTH, HEIGHT);
+            simulation.setViewport(viewport);
         }
         
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
             
-            // Draw the image
-            g.drawImage(image, 0, 0, null);
+            // Draw the latest frame finished by the solver thread
+            simulation.draw(g);
             
             // Draw parameters
             g.setColor(Color.WHITE);
@@ -206,17 +319,47 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
             g.setColor(Color.BLACK);
             g.drawString("Feed: " + String.format("%.3f", system.getFeed()), 10, 20);
             g.drawString("Kill: " + String.format("%.3f", system.getKill()), 10, 40);
+            
+            // Calculate FPS
+            frameCount++;
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastFpsTime > 1000) {
+                parent.updateRates(simulation.getStepsPerSecond(), system.getSteppedTiles(), system.getTileCount(),
+                        frameCount, simulation.getConvertMillis());
+                frameCount = 0;
+                lastFpsTime = currentTime;
+            }
         }
 
         // Mouse event handlers
         @Override
         public void mousePressed(MouseEvent e) {
-            system.addChemical(e.getX(), e.getY());
+            if (SwingUtilities.isLeftMouseButton(e)) {
+                simulation.pressBrush(viewport.cellX(e.getX()), viewport.cellY(e.getY()));
+            } else {
+                panX = e.getX();
+                panY = e.getY();
+            }
         }
         
         @Override
         public void mouseDragged(MouseEvent e) {
-            system.addChemical(e.getX(), e.getY());
+            if (SwingUtilities.isLeftMouseButton(e)) {
+                simulation.dragBrush(viewport.cellX(e.getX()), viewport.cellY(e.getY()));
+            } else {
+                viewport = viewport.pan(e.getX() - panX, e.getY() - panY);
+                simulation.setViewport(viewport);
+                panX = e.getX();
+                panY = e.getY();
+            }
+        }
+        
+        // Each notch of the wheel zooms by a quarter octave around the pointer
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            double factor = Math.pow(2, e.getPreciseWheelRotation() / 4);
+            viewport = viewport.zoom(factor, e.getX(), e.getY(), maxScale);
+            simulation.setViewport(viewport);
         }
         
         // Unused mouse events
@@ -227,199 +370,3 @@ public class ReactionDiffusionSimulation extends JFrame implements ChangeListene
         @Override public void mouseMoved(MouseEvent e) {}
     }
 }
-
-/**
- * Class representing the reaction-diffusion system
- */
-class ReactionDiffusionSystem {
-    private int width;
-    private int height;
-    
-    // Grid arrays for chemicals A and B
-    private double[][] gridA;
-    private double[][] gridB;
-    private double[][] nextA;
-    private double[][] nextB;
-    
-    // Simulation parameters (Gray-Scott model)
-    private double dA = 1.0;  // Diffusion rate of A
-    private double dB = 0.5;  // Diffusion rate of B
-    private double feed = 0.055;  // Feed rate
-    private double kill = 0.062;  // Kill rate
-    
-    // Performance optimization
-    private ExecutorService executor;
-    private int numThreads;
-    
-    public ReactionDiffusionSystem(int width, int height) {
-        this.width = width;
-        this.height = height;
-        
-        // Initialize grid arrays
-        gridA = new double[width][height];
-        gridB = new double[width][height];
-        nextA = new double[width][height];
-        nextB = new double[width][height];
-        
-        // Setup thread pool for parallel computation
-        numThreads = Runtime.getRuntime().availableProcessors();
-        executor = Executors.newFixedThreadPool(numThreads);
-    }
-    
-    public void initialize() {
-        // Initialize with a uniform state (A=1, B=0)
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                gridA[i][j] = 1.0;
-                gridB[i][j] = 0.0;
-                nextA[i][j] = 1.0;
-                nextB[i][j] = 0.0;
-            }
-        }
-        
-        // Add some chemical B in the center
-        addChemicalSquare(width / 2, height / 2, 20);
-    }
-    
-    public void setParameters(double feed, double kill) {
-        this.feed = feed;
-        this.kill = kill;
-    }
-    
-    public double getFeed() {
-        return feed;
-    }
-    
-    public double getKill() {
-        return kill;
-    }
-    
-    public double[][] getGridB() {
-        return gridB;
-    }
-    
-    public void addChemical(int x, int y) {
-        // Add chemical B in a circular pattern
-        int radius = 5;
-        
-        for (int i = -radius; i <= radius; i++) {
-            for (int j = -radius; j <= radius; j++) {
-                int posX = x + i;
-                int posY = y + j;
-                
-                if (posX >= 0 && posX < width && posY >= 0 && posY < height) {
-                    // Add chemical in a circular pattern
-                    if (i*i + j*j <= radius*radius) {
-                        gridB[posX][posY] = 1.0;
-                        gridA[posX][posY] = 0.0;
-                    }
-                }
-            }
-        }
-    }
-    
-    public void addChemicalSquare(int x, int y, int size) {
-        // Add a square of chemical B
-        int halfSize = size / 2;
-        
-        for (int i = -halfSize; i <= halfSize; i++) {
-            for (int j = -halfSize; j <= halfSize; j++) {
-                int posX = x + i;
-                int posY = y + j;
-                
-                if (posX >= 0 && posX < width && posY >= 0 && posY < height) {
-                    gridB[posX][posY] = 1.0;
-                    gridA[posX][posY] = 0.0;
-                }
-            }
-        }
-    }
-    
-    public void update() {
-        // Use parallel processing for better performance
-        for (int threadId = 0; threadId < numThreads; threadId++) {
-            final int threadIndex = threadId;
-            executor.execute(() -> updateRegion(threadIndex));
-        }
-        
-        try {
-            executor.awaitTermination(16, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        
-        // Swap grid arrays
-        double[][] tempA = gridA;
-        gridA = nextA;
-        nextA = tempA;
-        
-        double[][] tempB = gridB;
-        gridB = nextB;
-        nextB = tempB;
-    }
-    
-    private void updateRegion(int threadId) {
-        // Each thread processes a horizontal slice of the grid
-        int startY = (height / numThreads) * threadId;
-        int endY = (threadId == numThreads - 1) ? height : (height / numThreads) * (threadId + 1);
-        
-        // Apply the Gray-Scott reaction-diffusion formula
-        int skip = 1; // For better performance, we can compute every other pixel
-        
-        for (int i = skip; i < width - skip; i += skip) {
-            for (int j = startY; j < endY - skip && j < height - skip; j += skip) {
-                // Get current values
-                double a = gridA[i][j];
-                double b = gridB[i][j];
-                
-                // Calculate the Laplacian for diffusion
-                double laplaceA = 0;
-                double laplaceB = 0;
-                
-                // 3x3 kernel
-                laplaceA += gridA[i-skip][j] * 0.2;
-                laplaceA += gridA[i+skip][j] * 0.2;
-                laplaceA += gridA[i][j-skip] * 0.2;
-                laplaceA += gridA[i][j+skip] * 0.2;
-                laplaceA += gridA[i-skip][j-skip] * 0.05;
-                laplaceA += gridA[i+skip][j-skip] * 0.05;
-                laplaceA += gridA[i-skip][j+skip] * 0.05;
-                laplaceA += gridA[i+skip][j+skip] * 0.05;
-                laplaceA -= gridA[i][j] * 1.0;
-                
-                laplaceB += gridB[i-skip][j] * 0.2;
-                laplaceB += gridB[i+skip][j] * 0.2;
-                laplaceB += gridB[i][j-skip] * 0.2;
-                laplaceB += gridB[i][j+skip] * 0.2;
-                laplaceB += gridB[i-skip][j-skip] * 0.05;
-                laplaceB += gridB[i+skip][j-skip] * 0.05;
-                laplaceB += gridB[i-skip][j+skip] * 0.05;
-                laplaceB += gridB[i+skip][j+skip] * 0.05;
-                laplaceB -= gridB[i][j] * 1.0;
-                
-                // Gray-Scott reaction-diffusion formula
-                double reaction = a * b * b;
-                
-                // Update rules
-                nextA[i][j] = a + (dA * laplaceA - reaction + feed * (1 - a)) * 0.9;
-                nextB[i][j] = b + (dB * laplaceB + reaction - (kill + feed) * b) * 0.9;
-                
-                // Constrain values for stability
-                nextA[i][j] = Math.max(0, Math.min(1, nextA[i][j]));
-                nextB[i][j] = Math.max(0, Math.min(1, nextB[i][j]));
-                
-                // Copy values to neighboring cells when using skip
-                if (skip > 1) {
-                    for (int di = 0; di < skip && i + di < width; di++) {
-                        for (int dj = 0; dj < skip && j + dj < height; dj++) {
-                            if (di != 0 || dj != 0) {
-                                nextA[i + di][j + dj] = nextA[i][j];
-                                nextB[i + di][j + dj] = nextB[i][j];
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
@@ -0,0 +1,677 @@
+package Java.ReactionDiffusion;
+
+import java.util.Arrays;
+
+/**
+ * Class representing the reaction-diffusion system
+ *
+ * Tiles that are at the steady state (A=1, B=0, to within QUIET_EPSILON),
+ * along with all their neighbor tiles, are skipped, so a step costs time
+ * in proportion to the area the pattern has reached. A tile wakes when a
+ * neighbor tile becomes active or when chemical is added to it.
+ *
+ * With the SPECTRAL integrator, steps are taken by a SpectralSolver
+ * instead, spectralTimeStep units of time at a time rather than
+ * STEP_FACTOR, on a periodic domain.
+ */
+class ReactionDiffusionSystem {
+    private int width;
+    private int height;
+    
+    // Chemicals A and B, current and next, in the chosen memory layout
+    private ReactionDiffusionGrid grid;
+    
+    // Row kernel for the flat grids, scalar or SIMD
+    private GrayScottKernel kernel = GrayScottKernel.scalar();
+    
+    // Model run through the stencil engine instead of Gray-Scott, and its kernel
+    private ReactionModel model;
+    private GrayScottKernel modelKernel;
+    
+    // Simulation parameters (Gray-Scott model)
+    private double dA = 1.0;  // Diffusion rate of A
+    private double dB = 0.5;  // Diffusion rate of B
+    private double feed = 0.055;  // Feed rate
+    private double kill = 0.062;  // Kill rate
+    
+    // Cells per tile side; four 64x64 tiles of doubles fit in L2
+    private static final int TILE_SIZE = 64;
+    
+    // Rows per parallel band when converting the grid to pixels
+    private static final int RENDER_ROWS = 32;
+    
+    // Radius of the circle addChemical paints, and the distance between
+    // circles along a line, small enough for the edges to look smooth
+    private static final int BRUSH_RADIUS = 5;
+    private static final int BRUSH_SPACING = 2;
+    
+    // Steps advanced per pass over the fields when the grid supports it;
+    // off by default, since blocking measured slower (see ReactionDiffusionBenchmark)
+    private int blockSteps = 1;
+    
+    // Time scheme, and the solver and its step length for the spectral one
+    private Integrator integrator = Integrator.EXPLICIT;
+    private SpectralSolver spectral;
+    private double spectralTimeStep = 8.0;
+    
+    // Largest distance from the boundary values at which a cell still counts as quiet
+    private static final double QUIET_EPSILON = 1e-6;
+    
+    // Persistent workers that update the tiles of each step
+    private TileWorkerPool pool;
+    private int tileCols;
+    private int tileRows;
+    
+    // Whether quiet tiles are skipped
+    private boolean skipQuietTiles = true;
+    
+    // Tiles not at the steady state after the last pass; each worker writes
+    // only its own tile, and the barrier publishes the flags to the next plan
+    private boolean[] active;
+    
+    // Passes left in which a skipped tile must reset its next fields, so
+    // that both buffers hold the steady state before it is left alone
+    private byte[] settle;
+    
+    // Tiles to process in the current pass; ~tile means reset instead of step
+    private int[] work;
+    private int workCount;
+    private volatile int steppedTiles;
+    
+    // Tiles whose cells may have changed since the pyramid last read them
+    private boolean[] changed;
+    
+    // Averages of B for zoomed-out views, built on first use, and the
+    // visible changed tiles to refresh, taken in turn from a moving start
+    private MipPyramid pyramid;
+    private int[] pyramidWork;
+    private int pyramidCursor;
+    
+    // Time per frame spent bringing visible pyramid tiles up to date; the
+    // rest are refreshed in the frames after
+    private static final long PYRAMID_BUDGET_NANOS = 8_000_000L;
+    
+    // Per frame, the cell or pyramid column drawn in each view column
+    private int[] viewColumns = new int[0];
+    private final ThreadLocal<double[]> viewRow = ThreadLocal.withInitial(() -> new double[0]);
+    
+    public ReactionDiffusionSystem(int width, int height) {
+        this(width, height, Runtime.getRuntime().availableProcessors(), GridStorage.FLAT_DOUBLE);
+    }
+    
+    public ReactionDiffusionSystem(int width, int height, int threads, GridStorage storage) {
+        this(storage.create(width, height), threads);
+    }
+    
+    /**
+     * Run on an existing grid, such as a file-backed OffHeapGrid that may
+     * hold a saved state; call initialize() only for a fresh one
+     */
+    public ReactionDiffusionSystem(ReactionDiffusionGrid grid, int threads) {
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.grid = grid;
+        
+        // Setup worker threads for parallel computation
+        pool = new TileWorkerPool(threads);
+        tileCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        active = new boolean[tileCols * tileRows];
+        settle = new byte[tileCols * tileRows];
+        work = new int[tileCols * tileRows];
+        changed = new boolean[tileCols * tileRows];
+        pyramidWork = new int[tileCols * tileRows];
+        wakeAllTiles();
+        markAllChanged();
+    }
+    
+    public void initialize() {
+        clear();
+        
+        // Add some chemical B in the center
+        addChemicalSquare(width / 2, height / 2, 20);
+    }
+    
+    // Set every cell to the boundary values (A=1, B=0 for Gray-Scott), with no chemical added
+    public void clear() {
+        grid.fill(grid.getBoundaryA(), grid.getBoundaryB());
+        grid.setSteps(0);
+        
+        // Both buffers now hold the steady state, so nothing needs stepping
+        Arrays.fill(active, false);
+        Arrays.fill(settle, (byte) 0);
+        markAllChanged();
+    }
+    
+    /**
+     * Move the current state into a different memory layout. Call only
+     * between steps. Throws IllegalArgumentException for a layout that
+     * cannot run the current model (see canUseStorage).
+     */
+    public void setStorage(GridStorage storage) {
+        if (!canUseStorage(storage)) {
+            throw new IllegalArgumentException(storage + " storage cannot run " + model.getName());
+        }
+        ReactionDiffusionGrid converted = storage.create(width, height);
+        converted.setBoundary(grid.getBoundaryA(), grid.getBoundaryB());
+        converted.fill(grid.getBoundaryA(), grid.getBoundaryB());
+        converted.copyFrom(grid);
+        converted.setKernel(model == null ? kernel : modelKernel);
+        converted.setSteps(grid.getSteps());
+        grid = converted;
+        wakeAllTiles();
+        markAllChanged();
+    }
+    
+    // Whether setStorage accepts a layout; double[][] only steps Gray-Scott, so not with a model
+    public boolean canUseStorage(GridStorage storage) {
+        return model == null || storage != GridStorage.ARRAY;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    // Row kernel used by the flat grids; results are identical either way
+    public void setKernel(GrayScottKernel kernel) {
+        this.kernel = kernel;
+        if (model == null) {
+            grid.setKernel(kernel);
+        }
+    }
+    
+    public GrayScottKernel getKernel() {
+        return kernel;
+    }
+    
+    /**
+     * Step another reaction-diffusion model through the stencil engine, or
+     * Gray-Scott with the row kernel again for null. The model brings its
+     * own parameters; it runs on the flat and off-heap grids with the
+     * explicit integrator, while ArrayGrid and the spectral integrator
+     * stay Gray-Scott only. Call initialize() or clear() after switching.
+     * Throws IllegalStateException for a model while the grid is an
+     * ArrayGrid.
+     */
+    public void setModel(ReactionModel model) {
+        if (model != null && grid instanceof ArrayGrid) {
+            throw new IllegalStateException(GridStorage.ARRAY + " storage cannot run " + model.getName());
+        }
+        this.model = model;
+        modelKernel = model == null ? null : StencilEngine.compile(model);
+        grid.setKernel(model == null ? kernel : modelKernel);
+        if (model == null) {
+            grid.setBoundary(1.0, 0.0);
+        } else {
+            grid.setBoundary(model.getBoundaryA(), model.getBoundaryB());
+        }
+        wakeAllTiles();
+    }
+    
+    public ReactionModel getModel() {
+        return model;
+    }
+    
+    public ReactionDiffusionGrid getGrid() {
+        return grid;
+    }
+    
+    public void setParameters(double feed, double kill) {
+        this.feed = feed;
+        this.kill = kill;
+    }
+    
+    public double getFeed() {
+        return feed;
+    }
+    
+    public double getKill() {
+        return kill;
+    }
+    
+    public double getDiffusionA() {
+        return dA;
+    }
+    
+    public double getDiffusionB() {
+        return dB;
+    }
+    
+    public void addChemical(int x, int y) {
+        // Add chemical B in a circular pattern
+        int radius = BRUSH_RADIUS;
+        double seedA = model == null ? 0.0 : model.getSeedA();
+        double seedB = model == null ? 1.0 : model.getSeedB();
+        
+        for (int i = -radius; i <= radius; i++) {
+            for (int j = -radius; j <= radius; j++) {
+                int posX = x + i;
+                int posY = y + j;
+                
+                if (posX >= 0 && posX < width && posY >= 0 && posY < height) {
+                    // Add chemical in a circular pattern
+                    if (i*i + j*j <= radius*radius) {
+                        grid.set(posX, posY, seedA, seedB);
+                        wakeTile(posX, posY);
+                    }
+                }
+            }
+        }
+    }
+    
+    // Add chemical B along a line from (x0, y0) to (x1, y1), as a brush stroke
+    public void addChemicalLine(int x0, int y0, int x1, int y1) {
+        int length = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+        int stamps = (length + BRUSH_SPACING - 1) / BRUSH_SPACING;
+        if (stamps == 0) {
+            addChemical(x0, y0);
+            return;
+        }
+        for (int i = 0; i <= stamps; i++) {
+            addChemical(x0 + (x1 - x0) * i / stamps, y0 + (y1 - y0) * i / stamps);
+        }
+    }
+    
+    public void addChemicalSquare(int x, int y, int size) {
+        // Add a square of chemical B
+        int halfSize = size / 2;
+        double seedA = model == null ? 0.0 : model.getSeedA();
+        double seedB = model == null ? 1.0 : model.getSeedB();
+        
+        for (int i = -halfSize; i <= halfSize; i++) {
+            for (int j = -halfSize; j <= halfSize; j++) {
+                int posX = x + i;
+                int posY = y + j;
+                
+                if (posX >= 0 && posX < width && posY >= 0 && posY < height) {
+                    grid.set(posX, posY, seedA, seedB);
+                    wakeTile(posX, posY);
+                }
+            }
+        }
+    }
+    
+    // Copy row y of both chemicals into a and b
+    public void getRow(int y, double[] a, double[] b) {
+        for (int x = 0; x < width; x++) {
+            a[x] = grid.getA(x, y);
+            b[x] = grid.getB(x, y);
+        }
+    }
+    
+    // Overwrite row y of both chemicals, for halos received from elsewhere
+    public void setRow(int y, double[] a, double[] b) {
+        for (int x = 0; x < width; x++) {
+            grid.set(x, y, a[x], b[x]);
+        }
+        for (int x = 0; x < width; x += TILE_SIZE) {
+            wakeTile(x, y);
+        }
+    }
+    
+    public void update() {
+        if (integrator == Integrator.SPECTRAL && model == null) {
+            updateSpectral(1);
+            return;
+        }
+        
+        // Every tile is finished when run() returns, so the swap is safe
+        planTiles();
+        pool.run(workCount, this::updateTile);
+        grid.swap(1);
+    }
+    
+    /**
+     * Advance several steps. If the grid supports it, up to blockSteps of
+     * them are done per pass over the fields, giving the same result as
+     * calling update() that many times.
+     */
+    public void update(int steps) {
+        if (integrator == Integrator.SPECTRAL && model == null) {
+            updateSpectral(steps);
+            return;
+        }
+        while (steps > 0) {
+            // A block must not spread further than the neighbor tiles
+            int block = grid.canBlockSteps() ? Math.min(steps, Math.min(blockSteps, TILE_SIZE)) : 1;
+            if (block == 1) {
+                update();
+            } else {
+                planTiles();
+                pool.run(workCount, index -> updateTileBlock(index, block));
+                grid.swap(block);
+            }
+            steps -= block;
+        }
+    }
+    
+    private void updateSpectral(int steps) {
+        if (spectral == null) {
+            spectral = new SpectralSolver(width, height);
+        }
+        spectral.step(grid, steps, spectralTimeStep, dA, dB, feed, kill, pool);
+        grid.setSteps(grid.getSteps() + steps);
+        
+        // The solver wrote only the current fields, so check every tile again
+        wakeAllTiles();
+        markAllChanged();
+    }
+    
+    public void setIntegrator(Integrator integrator) {
+        this.integrator = integrator;
+    }
+    
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+    
+    // Time advanced per spectral step; an explicit step advances STEP_FACTOR
+    public void setSpectralTimeStep(double spectralTimeStep) {
+        this.spectralTimeStep = spectralTimeStep;
+    }
+    
+    public double getSpectralTimeStep() {
+        return spectralTimeStep;
+    }
+    
+    // Steps per blocked pass; 1 turns temporal blocking off
+    public void setBlockSteps(int blockSteps) {
+        this.blockSteps = Math.max(1, blockSteps);
+    }
+    
+    public int getBlockSteps() {
+        return blockSteps;
+    }
+    
+    /**
+     * Convert B into row-major RGB pixels through a colormap table, split
+     * into bands of rows across the worker threads. Call only between steps.
+     */
+    public void render(int[] pixels, int[] colors) {
+        int bands = (height + RENDER_ROWS - 1) / RENDER_ROWS;
+        pool.run(bands, band -> grid.toPixels(pixels, colors,
+                band * RENDER_ROWS, Math.min(height, (band + 1) * RENDER_ROWS)));
+    }
+    
+    /**
+     * Render the part of the grid a viewport shows into viewWidth x
+     * viewHeight row-major pixels, black outside the grid. Zoomed in, or
+     * at up to two cells per pixel, cells are read from the grid; further
+     * out, from the pyramid level with cells no larger than a pixel, after
+     * refreshing its visible changed tiles for up to PYRAMID_BUDGET_NANOS.
+     * Either way the cost follows the view, not the grid. Returns false if
+     * some visible tiles were left for the next frame. Call only between
+     * steps.
+     */
+    public boolean renderView(int[] pixels, int viewWidth, int viewHeight, Viewport view, int[] colors) {
+        if (view.isIdentity() && viewWidth == width && viewHeight == height) {
+            render(pixels, colors);
+            return true;
+        }
+        
+        int level = view.level(MipPyramid.levelCount(width, height));
+        boolean complete = level == 0 || refreshPyramid(view, viewWidth, viewHeight);
+        
+        // Column in the level drawn by each pixel column, or -1 off the grid
+        int levelWidth = level == 0 ? width : pyramid.getLevelWidth(level);
+        if (viewColumns.length < viewWidth) {
+            viewColumns = new int[viewWidth];
+        }
+        int[] columns = viewColumns;
+        for (int x = 0; x < viewWidth; x++) {
+            int cell = view.cellX(x);
+            columns[x] = cell < 0 || cell >= width ? -1 : cell >> level;
+        }
+        
+        int bands = (viewHeight + RENDER_ROWS - 1) / RENDER_ROWS;
+        pool.run(bands, band -> renderViewRows(pixels, viewWidth, columns, levelWidth, view, level, colors,
+                band * RENDER_ROWS, Math.min(viewHeight, (band + 1) * RENDER_ROWS)));
+        return complete;
+    }
+    
+    private void renderViewRows(int[] pixels, int viewWidth, int[] columns, int levelWidth, Viewport view,
+                                int level, int[] colors, int fromRow, int toRow) {
+        // Valid columns form one run, increasing from left to right
+        int first = 0;
+        while (first < viewWidth && columns[first] < 0) {
+            first++;
+        }
+        int last = viewWidth - 1;
+        while (last >= first && columns[last] < 0) {
+            last--;
+        }
+        
+        for (int y = fromRow; y < toRow; y++) {
+            int out = y * viewWidth;
+            int cellY = view.cellY(y);
+            if (first > last || cellY < 0 || cellY >= height) {
+                Arrays.fill(pixels, out, out + viewWidth, 0);
+                continue;
+            }
+            Arrays.fill(pixels, out, out + first, 0);
+            Arrays.fill(pixels, out + last + 1, out + viewWidth, 0);
+            
+            if (level == 0) {
+                // Read only the cells this row of the view spans
+                int from = columns[first];
+                int count = columns[last] - from + 1;
+                double[] row = viewRow.get();
+                if (row.length < count) {
+                    row = new double[count];
+                    viewRow.set(row);
+                }
+                grid.getRowB(cellY, from, count, row, 0);
+                for (int x = first; x <= last; x++) {
+                    pixels[out + x] = colors[Colormap.index(row[columns[x] - from])];
+                }
+            } else {
+                char[] cells = pyramid.getLevel(level);
+                int in = (cellY >> level) * levelWidth;
+                for (int x = first; x <= last; x++) {
+                    pixels[out + x] = colors[MipPyramid.colorIndex(cells[in + columns[x]])];
+                }
+            }
+        }
+    }
+    
+    // Bring the changed tiles under the view up to date, as far as the budget allows
+    private boolean refreshPyramid(Viewport view, int viewWidth, int viewHeight) {
+        if (pyramid == null) {
+            pyramid = new MipPyramid(width, height, TILE_SIZE);
+            markAllChanged();
+        }
+        
+        int fromCol = clampTile(view.toGridX(0), tileCols);
+        int toCol = clampTile(view.toGridX(viewWidth), tileCols);
+        int fromRow = clampTile(view.toGridY(0), tileRows);
+        int toRow = clampTile(view.toGridY(viewHeight), tileRows);
+        int count = 0;
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                if (changed[row * tileCols + col]) {
+                    pyramidWork[count++] = row * tileCols + col;
+                }
+            }
+        }
+        if (count == 0) {
+            return true;
+        }
+        
+        // Start where the last frame stopped, so every tile gets its turn
+        int visible = count;
+        int start = pyramidCursor % visible;
+        int batch = 4 * pool.getThreads();
+        int done = 0;
+        long deadline = System.nanoTime() + PYRAMID_BUDGET_NANOS;
+        while (done < visible && System.nanoTime() < deadline) {
+            int first = done;
+            int size = Math.min(batch, visible - done);
+            pool.run(size, index -> refreshPyramidTile(pyramidWork[(start + first + index) % visible]));
+            done += size;
+        }
+        pyramidCursor = start + done;
+        pyramid.refreshTop();
+        return done == visible;
+    }
+    
+    private static int clampTile(double position, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, (int) Math.floor(position / TILE_SIZE)));
+    }
+    
+    private void refreshPyramidTile(int tile) {
+        int startX = (tile % tileCols) * TILE_SIZE;
+        int startY = (tile / tileCols) * TILE_SIZE;
+        changed[tile] = false;
+        pyramid.refreshTile(grid, startX, startY, Math.min(width, startX + TILE_SIZE),
+                Math.min(height, startY + TILE_SIZE));
+    }
+    
+    // Tiles changed since the pyramid last read them; all of them before it is built
+    public int getStaleTiles() {
+        int stale = 0;
+        for (boolean tile : changed) {
+            if (tile) {
+                stale++;
+            }
+        }
+        return stale;
+    }
+    
+    public int getThreads() {
+        return pool.getThreads();
+    }
+    
+    // Stop the worker threads; the system cannot be stepped afterwards
+    public void shutdown() {
+        pool.shutdown();
+    }
+    
+    // Steps advanced since initialize(), including any resumed from a file
+    public long getSteps() {
+        return grid.getSteps();
+    }
+    
+    // Flush a file-backed grid to disk. Call only between steps.
+    public void checkpoint() {
+        grid.checkpoint();
+    }
+    
+    /**
+     * Skip tiles that are at the steady state along with their neighbors.
+     * Turning this off steps every tile, as before. Call only between steps.
+     */
+    public void setSkipQuietTiles(boolean skipQuietTiles) {
+        this.skipQuietTiles = skipQuietTiles;
+        wakeAllTiles();
+    }
+    
+    public boolean isSkipQuietTiles() {
+        return skipQuietTiles;
+    }
+    
+    // Tiles stepped in the last pass
+    public int getSteppedTiles() {
+        return steppedTiles;
+    }
+    
+    public int getTileCount() {
+        return tileCols * tileRows;
+    }
+    
+    private void wakeTile(int x, int y) {
+        active[(y / TILE_SIZE) * tileCols + x / TILE_SIZE] = true;
+        changed[(y / TILE_SIZE) * tileCols + x / TILE_SIZE] = true;
+    }
+    
+    // Step everything until the tiles have been checked again
+    private void wakeAllTiles() {
+        Arrays.fill(active, true);
+        Arrays.fill(settle, (byte) 2);
+    }
+    
+    private void markAllChanged() {
+        Arrays.fill(changed, true);
+    }
+    
+    // Choose the tiles to step or reset in the next pass
+    private void planTiles() {
+        workCount = 0;
+        int stepped = 0;
+        for (int tile = 0; tile < work.length; tile++) {
+            if (!skipQuietTiles || nearActiveTile(tile)) {
+                work[workCount++] = tile;
+                settle[tile] = 2;
+                stepped++;
+            } else if (settle[tile] > 0) {
+                work[workCount++] = ~tile;
+                settle[tile]--;
+            }
+        }
+        steppedTiles = stepped;
+    }
+    
+    // Whether the tile or any of its eight neighbors is active
+    private boolean nearActiveTile(int tile) {
+        int col = tile % tileCols;
+        int row = tile / tileCols;
+        for (int r = Math.max(0, row - 1); r <= Math.min(tileRows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(tileCols - 1, col + 1); c++) {
+                if (active[r * tileCols + c]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private void updateTile(int index) {
+        int tile = work[index];
+        if (tile < 0) {
+            resetTile(~tile);
+            return;
+        }
+        
+        // Each tile is a TILE_SIZE x TILE_SIZE block of cells
+        int startX = (tile % tileCols) * TILE_SIZE;
+        int startY = (tile / tileCols) * TILE_SIZE;
+        int endX = Math.min(width, startX + TILE_SIZE);
+        int endY = Math.min(height, startY + TILE_SIZE);
+        
+        // Apply the Gray-Scott reaction-diffusion formula
+        grid.updateTile(startX, startY, endX, endY, dA, dB, feed, kill);
+        active[tile] = !skipQuietTiles || !grid.nextTileNearSteady(startX, startY, endX, endY, QUIET_EPSILON);
+        changed[tile] = true;
+    }
+    
+    private void updateTileBlock(int index, int steps) {
+        int tile = work[index];
+        if (tile < 0) {
+            resetTile(~tile);
+            return;
+        }
+        
+        int startX = (tile % tileCols) * TILE_SIZE;
+        int startY = (tile / tileCols) * TILE_SIZE;
+        int endX = Math.min(width, startX + TILE_SIZE);
+        int endY = Math.min(height, startY + TILE_SIZE);
+        
+        grid.updateTileBlock(startX, startY, endX, endY, steps, dA, dB, feed, kill);
+        active[tile] = !skipQuietTiles || !grid.nextTileNearSteady(startX, startY, endX, endY, QUIET_EPSILON);
+        changed[tile] = true;
+    }
+    
+    // Snap a skipped tile exactly to the boundary values it is already close to
+    private void resetTile(int tile) {
+        int startX = (tile % tileCols) * TILE_SIZE;
+        int startY = (tile / tileCols) * TILE_SIZE;
+        int endX = Math.min(width, startX + TILE_SIZE);
+        int endY = Math.min(height, startY + TILE_SIZE);
+        
+        grid.fillNextTile(startX, startY, endX, endY, grid.getBoundaryA(), grid.getBoundaryB());
+        changed[tile] = true;
+    }
+}
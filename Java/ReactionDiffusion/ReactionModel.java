@@ -0,0 +1,32 @@
+package Java.ReactionDiffusion;
+
+/**
+ * A two-species reaction-diffusion model for StencilEngine: its stencil,
+ * the values outside the grid and the per-cell update. The species are
+ * stored as A and B, as for Gray-Scott, and B is the one displayed
+ * (through the colormap, clamped to 0 .. 1).
+ *
+ * nextA and nextB are called once per cell and step with the current
+ * values and their Laplacians, and return the values after the step,
+ * including any time step and clamping. They must be pure functions of
+ * their arguments, since tiles run in parallel.
+ */
+public interface ReactionModel {
+    String getName();
+
+    Stencil getStencil();
+
+    // Values outside the grid; also the rest state that quiet tiles are snapped to
+    double getBoundaryA();
+
+    double getBoundaryB();
+
+    // Values painted by addChemical to start a pattern
+    double getSeedA();
+
+    double getSeedB();
+
+    double nextA(double a, double b, double laplaceA, double laplaceB);
+
+    double nextB(double a, double b, double laplaceA, double laplaceB);
+}
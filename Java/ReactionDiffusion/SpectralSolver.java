@@ -0,0 +1,197 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Semi-implicit (IMEX Euler) Gray-Scott integrator. The nonlinear part of
+ * the reaction is stepped explicitly in real space, and diffusion along
+ * with the linear decay terms implicitly in Fourier space, where the
+ * Laplacian is diagonal:
+ *
+ *   A' = (A + dt * (feed - AB^2)) / (1 - dt * (dA * L(k) - feed))
+ *   B' = (B + dt * AB^2) / (1 - dt * (dB * L(k) - kill - feed))
+ *
+ * L(k) is the Fourier symbol of the same 3x3 stencil the explicit step
+ * uses, so both model the same discrete equation and have the same
+ * steady states. The implicit terms are stable at any time step, leaving
+ * only the AB^2 term to limit dt. The domain is periodic, unlike the
+ * explicit step, which sees the steady state outside the grid.
+ *
+ * Each step transforms A and B together as one complex field A + iB, so
+ * it costs one forward and one inverse 2D transform. Rows, columns and
+ * the point-wise passes are split across the tile worker pool.
+ */
+class SpectralSolver {
+    // Rows or columns per parallel task
+    private static final int BAND = 16;
+
+    private final int width;
+    private final int height;
+    private final Fft rowFft;
+    private final Fft columnFft;
+
+    // Field values between steps, and the field A + iB being transformed
+    private final double[] fieldA;
+    private final double[] fieldB;
+    private final double[] re;
+    private final double[] im;
+
+    // cos(2 pi k / n) along each axis, for the stencil symbol
+    private final double[] cosX;
+    private final double[] cosY;
+
+    // Per-thread buffers for gathering columns
+    private final ThreadLocal<double[][]> columns;
+
+    public SpectralSolver(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rowFft = new Fft(width);
+        columnFft = new Fft(height);
+        fieldA = new double[width * height];
+        fieldB = new double[width * height];
+        re = new double[width * height];
+        im = new double[width * height];
+
+        cosX = new double[width];
+        for (int k = 0; k < width; k++) {
+            cosX[k] = Math.cos(2 * Math.PI * k / width);
+        }
+        cosY = new double[height];
+        for (int k = 0; k < height; k++) {
+            cosY[k] = Math.cos(2 * Math.PI * k / height);
+        }
+        columns = ThreadLocal.withInitial(() -> new double[2][height]);
+    }
+
+    /**
+     * Advance the grid by the given number of steps of length dt, reading
+     * the current fields from the grid first and writing them back after.
+     */
+    public void step(ReactionDiffusionGrid grid, int steps, double dt,
+                     double dA, double dB, double feed, double kill, TileWorkerPool pool) {
+        int rowBands = (height + BAND - 1) / BAND;
+        int columnBands = (width + BAND - 1) / BAND;
+
+        pool.run(rowBands, band -> {
+            for (int y = band * BAND; y < Math.min(height, (band + 1) * BAND); y++) {
+                for (int x = 0; x < width; x++) {
+                    fieldA[y * width + x] = grid.getA(x, y);
+                    fieldB[y * width + x] = grid.getB(x, y);
+                }
+            }
+        });
+
+        for (int s = 0; s < steps; s++) {
+            pool.run(rowBands, band -> react(band, dt, feed));
+            pool.run(rowBands, band -> transformRows(band, false));
+            pool.run(columnBands, band -> transformColumns(band, false));
+
+            // Rows ky and height - ky hold each other's mirror frequencies
+            pool.run(height / 2 + 1, ky -> diffuse(ky, dt, dA, dB, feed, kill));
+
+            pool.run(columnBands, band -> transformColumns(band, true));
+            pool.run(rowBands, band -> transformRows(band, true));
+            pool.run(rowBands, this::clamp);
+        }
+
+        pool.run(rowBands, band -> {
+            for (int y = band * BAND; y < Math.min(height, (band + 1) * BAND); y++) {
+                for (int x = 0; x < width; x++) {
+                    grid.set(x, y, fieldA[y * width + x], fieldB[y * width + x]);
+                }
+            }
+        });
+    }
+
+    // Explicit part of the reaction: A + dt * (feed - AB^2) in re, B + dt * AB^2 in im
+    private void react(int band, double dt, double feed) {
+        int from = band * BAND * width;
+        int to = Math.min(height, (band + 1) * BAND) * width;
+        for (int k = from; k < to; k++) {
+            double a = fieldA[k];
+            double b = fieldB[k];
+            double reaction = a * b * b;
+            re[k] = a + dt * (feed - reaction);
+            im[k] = b + dt * reaction;
+        }
+    }
+
+    private void transformRows(int band, boolean inverse) {
+        for (int y = band * BAND; y < Math.min(height, (band + 1) * BAND); y++) {
+            rowFft.transform(re, im, y * width, inverse);
+        }
+    }
+
+    private void transformColumns(int band, boolean inverse) {
+        double[][] column = columns.get();
+        double[] cr = column[0];
+        double[] ci = column[1];
+        for (int x = band * BAND; x < Math.min(width, (band + 1) * BAND); x++) {
+            for (int y = 0; y < height; y++) {
+                cr[y] = re[y * width + x];
+                ci[y] = im[y * width + x];
+            }
+            columnFft.transform(cr, ci, 0, inverse);
+            for (int y = 0; y < height; y++) {
+                re[y * width + x] = cr[y];
+                im[y * width + x] = ci[y];
+            }
+        }
+    }
+
+    /**
+     * Implicit diffusion for the frequencies in row ky and its mirror row.
+     * Z = A + iB is split into the spectra of A and B using the symmetry of
+     * real fields, A(-k) = conj(A(k)), each is divided by its own factor,
+     * and they are joined again. The inverse transform's 1 / (width *
+     * height) is folded into the factors.
+     */
+    private void diffuse(int ky, double dt, double dA, double dB, double feed, double kill) {
+        int my = (height - ky) % height;
+        double normalize = 1.0 / ((double) width * height);
+        for (int kx = 0; kx < width; kx++) {
+            int mx = (width - kx) % width;
+            int k = ky * width + kx;
+            int m = my * width + mx;
+
+            // Each pair once; on a self-mirrored row, from the lower column
+            if (ky == my && mx < kx) {
+                continue;
+            }
+
+            double zr = re[k], zi = im[k];
+            double mr = re[m], mi = im[m];
+            double ar = (zr + mr) * 0.5;
+            double ai = (zi - mi) * 0.5;
+            double br = (zi + mi) * 0.5;
+            double bi = (mr - zr) * 0.5;
+
+            // Symbol of the 3x3 stencil: 4 edges of 0.2, 4 corners of 0.05, center -1
+            double cx = cosX[kx];
+            double cy = cosY[ky];
+            double symbol = 2 * ReactionDiffusionGrid.EDGE_WEIGHT * (cx + cy)
+                    + 4 * ReactionDiffusionGrid.CORNER_WEIGHT * cx * cy - 1;
+            double scaleA = normalize / (1 - dt * (dA * symbol - feed));
+            double scaleB = normalize / (1 - dt * (dB * symbol - kill - feed));
+            ar *= scaleA;
+            ai *= scaleA;
+            br *= scaleB;
+            bi *= scaleB;
+
+            // Z(k) = A + iB, Z(-k) = conj(A) + i conj(B)
+            re[k] = ar - bi;
+            im[k] = ai + br;
+            re[m] = ar + bi;
+            im[m] = br - ai;
+        }
+    }
+
+    // Back to real space, keeping values in range as the explicit step does
+    private void clamp(int band) {
+        int from = band * BAND * width;
+        int to = Math.min(height, (band + 1) * BAND) * width;
+        for (int k = from; k < to; k++) {
+            fieldA[k] = Math.max(0, Math.min(1, re[k]));
+            fieldB[k] = Math.max(0, Math.min(1, im[k]));
+        }
+    }
+}
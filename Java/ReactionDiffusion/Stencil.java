@@ -0,0 +1,68 @@
+package Java.ReactionDiffusion;
+
+/**
+ * Weights of a discrete Laplacian over the 3x3 neighborhood of a cell, as
+ * a list of (dx, dy, weight) points. The engine sums the points in the
+ * order given, so a stencil listed in the same order as a hand-written
+ * loop rounds exactly like it.
+ */
+public final class Stencil {
+    private final int[] dx;
+    private final int[] dy;
+    private final double[] weights;
+
+    private Stencil(int[] dx, int[] dy, double[] weights) {
+        this.dx = dx;
+        this.dy = dy;
+        this.weights = weights;
+    }
+
+    /**
+     * Points given as {dx, dy} pairs with one weight each. The grids keep
+     * a one-cell halo, so offsets are limited to -1 .. 1.
+     */
+    public static Stencil of(int[][] points, double[] weights) {
+        if (points.length != weights.length || points.length == 0) {
+            throw new IllegalArgumentException("Need one weight per point and at least one point");
+        }
+        int[] dx = new int[points.length];
+        int[] dy = new int[points.length];
+        for (int p = 0; p < points.length; p++) {
+            dx[p] = points[p][0];
+            dy[p] = points[p][1];
+            if (Math.abs(dx[p]) > 1 || Math.abs(dy[p]) > 1) {
+                throw new IllegalArgumentException("Stencil point outside the 3x3 neighborhood: "
+                        + dx[p] + ", " + dy[p]);
+            }
+        }
+        return new Stencil(dx, dy, weights.clone());
+    }
+
+    // The Gray-Scott 3x3 stencil, in the neighbor order of ArrayGrid and the row kernels
+    public static Stencil ninePoint(double edge, double corner) {
+        return of(new int[][] {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {1, -1}, {-1, 1}, {1, 1}, {0, 0}},
+                new double[] {edge, edge, edge, edge, corner, corner, corner, corner, -1.0});
+    }
+
+    // The 5-point Laplacian: four edges of 1, center -4
+    public static Stencil fivePoint() {
+        return of(new int[][] {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {0, 0}},
+                new double[] {1, 1, 1, 1, -4});
+    }
+
+    public int size() {
+        return weights.length;
+    }
+
+    public int getDx(int point) {
+        return dx[point];
+    }
+
+    public int getDy(int point) {
+        return dy[point];
+    }
+
+    public double getWeight(int point) {
+        return weights[point];
+    }
+}
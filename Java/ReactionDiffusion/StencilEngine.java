@@ -0,0 +1,63 @@
+package Java.ReactionDiffusion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a ReactionModel into a row kernel that the grids run with their
+ * usual tiling, threads, halo and blocked steps.
+ *
+ * A single kernel class shared by every model would leave its calls to
+ * nextA and nextB megamorphic once three models have run, and the JIT
+ * would stop inlining them. Instead each model class gets its own copy of
+ * StencilKernel, defined from the template's class file as a hidden class
+ * in this package. Each copy gathers its own type profile and is compiled
+ * separately, so the reaction is inlined into the row loop. If the class
+ * file cannot be read, the template itself is used.
+ */
+final class StencilEngine {
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, ReactionModel.class);
+
+    // Constructors of the kernel copies, by model class
+    private static final Map<Class<?>, MethodHandle> kernels = new ConcurrentHashMap<>();
+
+    private static final byte[] template = readTemplate();
+
+    private StencilEngine() {
+    }
+
+    // A kernel stepping the model; models of the same class share the kernel class
+    static GrayScottKernel compile(ReactionModel model) {
+        if (template == null) {
+            return new StencilKernel(model);
+        }
+        try {
+            return (GrayScottKernel) kernels.computeIfAbsent(model.getClass(), type -> defineKernel())
+                    .invoke(model);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create a kernel for " + model.getName(), e);
+        }
+    }
+
+    private static MethodHandle defineKernel() {
+        try {
+            MethodHandles.Lookup kernel = MethodHandles.lookup().defineHiddenClass(template, true);
+            return kernel.findConstructor(kernel.lookupClass(), CONSTRUCTOR);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot define a copy of StencilKernel", e);
+        }
+    }
+
+    private static byte[] readTemplate() {
+        try (InputStream in = StencilKernel.class.getResourceAsStream("StencilKernel.class")) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
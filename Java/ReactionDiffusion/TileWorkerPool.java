@@ -0,0 +1,122 @@
+package Java.ReactionDiffusion;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent worker threads that process the tiles of one simulation step
+ * together. The threads are started once and meet at a CyclicBarrier at
+ * the start and end of every step, so a step costs two barrier waits
+ * instead of submitting tasks and polling for them. The calling thread
+ * works too.
+ *
+ * Tiles are handed out through a shared counter: each thread claims the
+ * next unprocessed tile when it finishes one, so faster threads simply
+ * take more tiles. run() returns only after every tile is done.
+ */
+class TileWorkerPool {
+    /**
+     * Work for one tile, identified by its index
+     */
+    interface TileTask {
+        void run(int tile);
+    }
+
+    private final int threads;
+    private final CyclicBarrier start;
+    private final CyclicBarrier finish;
+    private final AtomicInteger nextTile = new AtomicInteger();
+
+    // Work of the step in progress, published to the workers by the barrier
+    private TileTask task;
+    private int tileCount;
+    private volatile Throwable failure;
+    private volatile boolean shutdown;
+
+    public TileWorkerPool(int threads) {
+        this.threads = Math.max(1, threads);
+        start = new CyclicBarrier(this.threads);
+        finish = new CyclicBarrier(this.threads);
+
+        for (int t = 1; t < this.threads; t++) {
+            Thread worker = new Thread(this::workLoop, "reaction-diffusion-worker-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Run task for tiles 0 .. tileCount - 1 on all threads and wait for
+     * them to finish. Only one thread may call this at a time.
+     */
+    public void run(int tileCount, TileTask task) {
+        if (shutdown) {
+            throw new IllegalStateException("Worker pool has been shut down");
+        }
+        this.task = task;
+        this.tileCount = tileCount;
+        nextTile.set(0);
+        failure = null;
+
+        await(start);
+        processTiles();
+        await(finish);
+
+        this.task = null;
+        if (failure != null) {
+            throw new RuntimeException("Tile task failed", failure);
+        }
+    }
+
+    // Stop the workers once they reach the start of the next step
+    public void shutdown() {
+        shutdown = true;
+        start.reset();
+    }
+
+    private void workLoop() {
+        while (true) {
+            try {
+                start.await();
+            } catch (InterruptedException | BrokenBarrierException e) {
+                return;
+            }
+            if (shutdown) {
+                return;
+            }
+            processTiles();
+            try {
+                finish.await();
+            } catch (InterruptedException | BrokenBarrierException e) {
+                return;
+            }
+        }
+    }
+
+    private void processTiles() {
+        int tile;
+        while ((tile = nextTile.getAndIncrement()) < tileCount) {
+            try {
+                task.run(tile);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for workers", e);
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Worker pool has been shut down", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Java.ReactionDiffusion;
+
+/**
+ * The part of the grid shown in the panel: the grid position of the
+ * top-left corner of the view and the number of cells per pixel, below 1
+ * when zoomed in. Immutable, so the Swing thread can replace it while the
+ * solver thread renders with the old one.
+ */
+final class Viewport {
+    // Closest zoom, in cells per pixel
+    static final double MIN_SCALE = 1.0 / 16;
+
+    private final double originX;
+    private final double originY;
+    private final double scale;
+
+    Viewport(double originX, double originY, double scale) {
+        this.originX = originX;
+        this.originY = originY;
+        this.scale = scale;
+    }
+
+    // The whole grid, centered, and shown 1:1 if it fits
+    static Viewport fit(int gridWidth, int gridHeight, int viewWidth, int viewHeight) {
+        double scale = Math.max(1, Math.max((double) gridWidth / viewWidth, (double) gridHeight / viewHeight));
+        return new Viewport((gridWidth - viewWidth * scale) / 2, (gridHeight - viewHeight * scale) / 2, scale);
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    // Grid coordinates of a point in the view, in pixels
+    public double toGridX(double x) {
+        return originX + x * scale;
+    }
+
+    public double toGridY(double y) {
+        return originY + y * scale;
+    }
+
+    // Cell under a pixel, or outside the grid
+    public int cellX(int x) {
+        return (int) Math.floor(toGridX(x + 0.5));
+    }
+
+    public int cellY(int y) {
+        return (int) Math.floor(toGridY(y + 0.5));
+    }
+
+    // Zoom by a factor of cells per pixel, keeping the point under (x, y) in place
+    public Viewport zoom(double factor, double x, double y, double maxScale) {
+        double zoomed = Math.max(MIN_SCALE, Math.min(maxScale, scale * factor));
+        return new Viewport(toGridX(x) - x * zoomed, toGridY(y) - y * zoomed, zoomed);
+    }
+
+    // Move the view by a number of pixels, as when dragging the grid
+    public Viewport pan(double dx, double dy) {
+        return new Viewport(originX - dx * scale, originY - dy * scale, scale);
+    }
+
+    /**
+     * Pyramid level to draw from: the coarsest whose cells are still no
+     * larger than a pixel, so that no cell is skipped over unseen
+     */
+    public int level(int levels) {
+        int level = 0;
+        while (level < levels - 1 && (2L << level) <= scale) {
+            level++;
+        }
+        return level;
+    }
+
+    // Whether cell (x, y) is drawn at pixel (x, y)
+    public boolean isIdentity() {
+        return originX == 0 && originY == 0 && scale == 1;
+    }
+}
@@ -0,0 +1,120 @@
+package Java.ReactionDiffusion.simd;
+
+import Java.ReactionDiffusion.GrayScottKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Gray-Scott row step that updates several cells per instruction with the
+ * Vector API. Each lane does the same operations in the same order as the
+ * scalar loop, without fused multiply-adds, so the results are identical.
+ * The cells left over at the end of a row go through the scalar kernel.
+ *
+ * Build and run with the incubator module, for example:
+ *   javac --add-modules jdk.incubator.vector -cp out -d out Java/ReactionDiffusion/simd/*.java
+ *   java --add-modules jdk.incubator.vector -cp out Java.ReactionDiffusion.ReactionDiffusionBenchmark
+ */
+public final class VectorGrayScottKernel implements GrayScottKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void stepRow(double[] gridA, double[] gridB, double[] nextA, double[] nextB,
+                        int from, int to, int stride,
+                        double dA, double dB, double feed, double kill) {
+        int lanes = DOUBLES.length();
+        double removal = kill + feed;
+
+        int k = from;
+        for (; k + lanes <= to; k += lanes) {
+            DoubleVector a = DoubleVector.fromArray(DOUBLES, gridA, k);
+            DoubleVector b = DoubleVector.fromArray(DOUBLES, gridB, k);
+
+            // 3x3 kernel, neighbors in the same order as the scalar loop
+            DoubleVector laplaceA = laplacian(gridA, k, stride).sub(a);
+            DoubleVector laplaceB = laplacian(gridB, k, stride).sub(b);
+
+            // Gray-Scott reaction-diffusion formula
+            DoubleVector reaction = a.mul(b).mul(b);
+            DoubleVector newA = a.add(laplaceA.mul(dA).sub(reaction)
+                    .add(a.neg().add(1).mul(feed)).mul(STEP_FACTOR));
+            DoubleVector newB = b.add(laplaceB.mul(dB).add(reaction)
+                    .sub(b.mul(removal)).mul(STEP_FACTOR));
+
+            // Constrain values for stability
+            newA.min(1).max(0).intoArray(nextA, k);
+            newB.min(1).max(0).intoArray(nextB, k);
+        }
+
+        GrayScottKernel.scalar().stepRow(gridA, gridB, nextA, nextB, k, to, stride, dA, dB, feed, kill);
+    }
+
+    // Weighted sum of the eight neighbors of the lanes starting at k
+    private static DoubleVector laplacian(double[] grid, int k, int stride) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k - 1).mul(EDGE_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k + 1).mul(EDGE_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k - stride).mul(EDGE_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k + stride).mul(EDGE_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k - stride - 1).mul(CORNER_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k - stride + 1).mul(CORNER_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k + stride - 1).mul(CORNER_WEIGHT));
+        sum = sum.add(DoubleVector.fromArray(DOUBLES, grid, k + stride + 1).mul(CORNER_WEIGHT));
+        return sum;
+    }
+
+    @Override
+    public void stepRow(float[] gridA, float[] gridB, float[] nextA, float[] nextB,
+                        int from, int to, int stride,
+                        double dA, double dB, double feed, double kill) {
+        int lanes = FLOATS.length();
+        float diffusionA = (float) dA;
+        float diffusionB = (float) dB;
+        float feedRate = (float) feed;
+        float removal = (float) (kill + feed);
+
+        int k = from;
+        for (; k + lanes <= to; k += lanes) {
+            FloatVector a = FloatVector.fromArray(FLOATS, gridA, k);
+            FloatVector b = FloatVector.fromArray(FLOATS, gridB, k);
+
+            // 3x3 kernel, neighbors in the same order as the scalar loop
+            FloatVector laplaceA = laplacian(gridA, k, stride).sub(a);
+            FloatVector laplaceB = laplacian(gridB, k, stride).sub(b);
+
+            // Gray-Scott reaction-diffusion formula
+            FloatVector reaction = a.mul(b).mul(b);
+            FloatVector newA = a.add(laplaceA.mul(diffusionA).sub(reaction)
+                    .add(a.neg().add(1f).mul(feedRate)).mul(STEP_FACTOR_F));
+            FloatVector newB = b.add(laplaceB.mul(diffusionB).add(reaction)
+                    .sub(b.mul(removal)).mul(STEP_FACTOR_F));
+
+            // Constrain values for stability, flushing negligible B to zero
+            newA.min(1f).max(0f).intoArray(nextA, k);
+            newB.min(1f).blend(0f, newB.compare(VectorOperators.LT, MIN_B)).intoArray(nextB, k);
+        }
+
+        GrayScottKernel.scalar().stepRow(gridA, gridB, nextA, nextB, k, to, stride, dA, dB, feed, kill);
+    }
+
+    // Weighted sum of the eight neighbors of the lanes starting at k
+    private static FloatVector laplacian(float[] grid, int k, int stride) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k - 1).mul(EDGE_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k + 1).mul(EDGE_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k - stride).mul(EDGE_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k + stride).mul(EDGE_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k - stride - 1).mul(CORNER_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k - stride + 1).mul(CORNER_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k + stride - 1).mul(CORNER_WEIGHT_F));
+        sum = sum.add(FloatVector.fromArray(FLOATS, grid, k + stride + 1).mul(CORNER_WEIGHT_F));
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + DOUBLES.length() + " doubles, " + FLOATS.length() + " floats)";
+    }
+}